@@ -0,0 +1,40 @@
+package com.alarmv1;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.io.File;
+
+// Debug builds only. Logs the fire-path latency summary and exports the records as CSV:
+//   adb shell am broadcast -a com.alarmv1.action.DUMP_TELEMETRY -p com.alarmv1
+// The broadcast result carries the CSV's path; add --ei version_code N to summarize one release.
+public class TelemetryDumpReceiver extends BroadcastReceiver {
+    private static final String TAG = "AlarmTelemetry";
+    private static final String EXTRA_VERSION_CODE = "version_code";
+    
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        final AlarmTelemetry telemetry = AlarmTelemetry.getInstance(context);
+        final int versionCode = intent.getIntExtra(EXTRA_VERSION_CODE, 0);
+        final PendingResult pendingResult = goAsync();
+        // The futures run on the telemetry thread; waiting on them must not block the main thread
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    AlarmTelemetry.Summary summary = telemetry.summarize(versionCode).get();
+                    File csv = telemetry.export().get();
+                    Log.i(TAG, summary.toString());
+                    Log.i(TAG, "Exported to " + csv);
+                    pendingResult.setResultData(csv.getAbsolutePath());
+                } catch (Exception e) {
+                    Log.w(TAG, "Could not dump alarm telemetry", e);
+                } finally {
+                    pendingResult.finish();
+                }
+            }
+        }, "telemetry-dump").start();
+    }
+}
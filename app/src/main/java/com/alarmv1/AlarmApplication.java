@@ -0,0 +1,24 @@
+package com.alarmv1;
+
+import android.app.Application;
+import android.os.StrictMode;
+
+public class AlarmApplication extends Application {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        
+        // Debug builds crash on main-thread disk I/O so regressions fail testing instead of shipping
+        if (BuildConfig.STRICT_MODE) {
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .penaltyDeath()
+                    .build());
+        }
+        
+        // Once per process instead of on every alarm fire
+        AlarmRingingService.createNotificationChannel(this);
+    }
+}
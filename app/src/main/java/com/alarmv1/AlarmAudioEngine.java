@@ -0,0 +1,439 @@
+package com.alarmv1;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Alarm playback from PCM decoded ahead of time. Tones are decoded to a cache file when an alarm
+// is scheduled, so at fire time start() only opens that file and feeds an AudioTrack; no codec
+// setup sits between the broadcast and the first sample. Uncached tones, and any failure of the
+// cached path, fall back to MediaPlayer, and from there to the system alarm sound.
+public class AlarmAudioEngine {
+    private static final String TAG = "AlarmAudioEngine";
+    private static final String CACHE_DIR = "alarm_pcm";
+    private static final int PCM_MAGIC = 0x50434D31; // "PCM1"
+    private static final int HEADER_BYTES = 12; // Magic, sample rate, channel count
+    private static final long CODEC_TIMEOUT_US = 10000;
+    
+    private static AlarmAudioEngine instance;
+    
+    private final Context context;
+    private File cacheDir; // Resolved on first use off the main thread; getCacheDir() touches disk
+    // Control runs on its own looper so the receiver's main thread never touches disk or codecs
+    private final Handler handler;
+    private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+    // Tones already checked or decoded this process; bulk re-arms call prepare once per alarm
+    private final Set<Integer> preparedIndexes = Collections.synchronizedSet(new HashSet<Integer>());
+    
+    private PlaybackThread playback;
+    private MediaPlayer fallbackPlayer;
+    
+    private AlarmAudioEngine(Context context) {
+        this.context = context.getApplicationContext();
+        HandlerThread thread = new HandlerThread("alarm-audio", Process.THREAD_PRIORITY_URGENT_AUDIO);
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+    
+    public static synchronized AlarmAudioEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmAudioEngine(context);
+        }
+        return instance;
+    }
+    
+    // Decodes the tone into the PCM cache unless it's already there. Called when alarms are armed.
+    public void prepare(final int ringtoneIndex) {
+        if (!preparedIndexes.add(ringtoneIndex)) return;
+        decodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int resourceId = RingtoneManager.getInstance(context).getRingtoneResource(ringtoneIndex);
+                if (resourceId == -1) return;
+                
+                File pcm = getCacheFile(ringtoneIndex, resourceId);
+                if (pcm.exists()) return;
+                
+                long started = SystemClock.elapsedRealtime();
+                try {
+                    decode(resourceId, pcm);
+                    Log.i(TAG, "Decoded ringtone " + ringtoneIndex + " in "
+                            + (SystemClock.elapsedRealtime() - started) + " ms");
+                } catch (Exception e) {
+                    preparedIndexes.remove(ringtoneIndex);
+                    Log.w(TAG, "Could not pre-decode ringtone " + ringtoneIndex, e);
+                }
+            }
+        });
+    }
+    
+    // Safe to call from the main thread; time to first sample is logged against this call and
+    // stamped on alarmId's telemetry trace
+    public void start(final int alarmId, final int ringtoneIndex) {
+        final long requestedAt = SystemClock.elapsedRealtime();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                stopPlayback();
+                
+                int resourceId = RingtoneManager.getInstance(context).getRingtoneResource(ringtoneIndex);
+                File pcm = resourceId != -1 ? getCacheFile(ringtoneIndex, resourceId) : null;
+                if (pcm != null && pcm.exists()) {
+                    playback = new PlaybackThread(pcm, alarmId, ringtoneIndex, requestedAt);
+                    playback.start();
+                } else {
+                    startFallback(alarmId, ringtoneIndex, requestedAt);
+                    if (pcm != null) {
+                        // The system may have cleared the cache since it was prepared
+                        redecode(ringtoneIndex);
+                    }
+                }
+            }
+        });
+    }
+    
+    // Runs on the playback thread when the cached path dies; the alarm must not go silent
+    private void onPlaybackFailed(final PlaybackThread failed) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (playback != failed) return; // Stopped or replaced meanwhile
+                playback = null;
+                startFallback(failed.alarmId, failed.ringtoneIndex, failed.requestedAt);
+                redecode(failed.ringtoneIndex);
+            }
+        });
+    }
+    
+    // Cached for the next time this tone rings; a no-op while the cache file is still there
+    private void redecode(int ringtoneIndex) {
+        preparedIndexes.remove(ringtoneIndex);
+        prepare(ringtoneIndex);
+    }
+    
+    public void stop() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                stopPlayback();
+            }
+        });
+    }
+    
+    private void stopPlayback() {
+        if (playback != null) {
+            playback.finish();
+            playback = null;
+        }
+        if (fallbackPlayer != null) {
+            try {
+                fallbackPlayer.stop();
+            } catch (IllegalStateException e) {
+                // Not prepared yet
+            }
+            releaseFallback();
+        }
+    }
+    
+    // The tone's own resource first, then the system alarm and ringtone sounds
+    private void startFallback(int alarmId, int ringtoneIndex, long requestedAt) {
+        List<Uri> uris = new ArrayList<>(3);
+        addIfPresent(uris, RingtoneManager.getInstance(context).getRingtoneUri(ringtoneIndex));
+        addIfPresent(uris, android.media.RingtoneManager.getDefaultUri(android.media.RingtoneManager.TYPE_ALARM));
+        addIfPresent(uris, android.media.RingtoneManager.getDefaultUri(android.media.RingtoneManager.TYPE_RINGTONE));
+        startPlayer(alarmId, uris, 0, requestedAt);
+    }
+    
+    private static void addIfPresent(List<Uri> uris, Uri uri) {
+        if (uri != null && !uris.contains(uri)) {
+            uris.add(uri);
+        }
+    }
+    
+    // Plays uris[position]; a setup or playback error moves on to the next one
+    private void startPlayer(final int alarmId, final List<Uri> uris, final int position, final long requestedAt) {
+        if (position >= uris.size()) {
+            Log.e(TAG, "No alarm sound could be played");
+            return;
+        }
+        try {
+            fallbackPlayer = new MediaPlayer();
+            fallbackPlayer.setAudioAttributes(new AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_ALARM)
+                    .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                    .build());
+            fallbackPlayer.setDataSource(context, uris.get(position));
+            fallbackPlayer.setLooping(true);
+            fallbackPlayer.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
+                @Override
+                public void onPrepared(MediaPlayer mediaPlayer) {
+                    mediaPlayer.start();
+                    AlarmTelemetry.getInstance(context).mark(alarmId, AlarmTelemetry.STAGE_AUDIBLE);
+                    Log.i(TAG, "First sample after " + (SystemClock.elapsedRealtime() - requestedAt)
+                            + " ms (MediaPlayer fallback)");
+                }
+            });
+            fallbackPlayer.setOnErrorListener(new MediaPlayer.OnErrorListener() {
+                @Override
+                public boolean onError(MediaPlayer mediaPlayer, int what, int extra) {
+                    Log.w(TAG, "Could not play " + uris.get(position) + " (" + what + ", " + extra + ")");
+                    if (mediaPlayer == fallbackPlayer) {
+                        releaseFallback();
+                        startPlayer(alarmId, uris, position + 1, requestedAt);
+                    }
+                    return true;
+                }
+            });
+            fallbackPlayer.prepareAsync();
+        } catch (Exception e) {
+            Log.w(TAG, "Could not play " + uris.get(position), e);
+            releaseFallback();
+            startPlayer(alarmId, uris, position + 1, requestedAt);
+        }
+    }
+    
+    private void releaseFallback() {
+        if (fallbackPlayer != null) {
+            fallbackPlayer.release();
+            fallbackPlayer = null;
+        }
+    }
+    
+    // Called only on the decode and playback threads
+    private synchronized File getCacheDir() {
+        if (cacheDir == null) {
+            cacheDir = new File(context.getCacheDir(), CACHE_DIR);
+        }
+        return cacheDir;
+    }
+    
+    private File getCacheFile(int ringtoneIndex, int resourceId) {
+        // The resource id is part of the name so an app update that renumbers tones misses the cache
+        return new File(getCacheDir(), "ringtone_" + ringtoneIndex + "_" + Integer.toHexString(resourceId) + ".pcm");
+    }
+    
+    // Writes 16-bit PCM behind a small header; renamed into place only once complete
+    private void decode(int resourceId, File target) throws IOException {
+        File dir = target.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File temp = new File(target.getPath() + ".tmp");
+        
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        RandomAccessFile out = new RandomAccessFile(temp, "rw");
+        try {
+            out.setLength(0); // Drop leftovers from an interrupted decode
+            AssetFileDescriptor fd = context.getResources().openRawResourceFd(resourceId);
+            try {
+                extractor.setDataSource(fd.getFileDescriptor(), fd.getStartOffset(), fd.getLength());
+            } finally {
+                fd.close();
+            }
+            
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat trackFormat = extractor.getTrackFormat(i);
+                String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = trackFormat;
+                    break;
+                }
+            }
+            if (format == null) {
+                throw new IOException("No audio track");
+            }
+            
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+            
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            FileChannel channel = out.getChannel();
+            channel.position(HEADER_BYTES);
+            
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            boolean outputDone = false;
+            while (!outputDone) {
+                if (!inputDone) {
+                    int inputIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                    if (inputIndex >= 0) {
+                        ByteBuffer input = codec.getInputBuffer(inputIndex);
+                        int size = extractor.readSampleData(input, 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                
+                int outputIndex = codec.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+                if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat outputFormat = codec.getOutputFormat();
+                    if (outputFormat.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                            && outputFormat.getInteger(MediaFormat.KEY_PCM_ENCODING) != AudioFormat.ENCODING_PCM_16BIT) {
+                        throw new IOException("Unsupported PCM encoding");
+                    }
+                    sampleRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    channelCount = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                } else if (outputIndex >= 0) {
+                    if (info.size > 0) {
+                        ByteBuffer output = codec.getOutputBuffer(outputIndex);
+                        output.position(info.offset);
+                        output.limit(info.offset + info.size);
+                        while (output.hasRemaining()) {
+                            channel.write(output);
+                        }
+                    }
+                    codec.releaseOutputBuffer(outputIndex, false);
+                    outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                }
+            }
+            
+            out.seek(0);
+            out.writeInt(PCM_MAGIC);
+            out.writeInt(sampleRate);
+            out.writeInt(channelCount);
+        } finally {
+            if (codec != null) {
+                codec.release();
+            }
+            extractor.release();
+            out.close();
+        }
+        
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Cannot move " + temp + " into place");
+        }
+    }
+    
+    // Streams the cached PCM into an AudioTrack, looping until finished. Any failure hands the
+    // alarm over to the MediaPlayer fallback.
+    private class PlaybackThread extends Thread {
+        private final File pcm;
+        private final int alarmId;
+        private final int ringtoneIndex;
+        private final long requestedAt;
+        private volatile boolean finished;
+        
+        PlaybackThread(File pcm, int alarmId, int ringtoneIndex, long requestedAt) {
+            super("alarm-playback");
+            this.pcm = pcm;
+            this.alarmId = alarmId;
+            this.ringtoneIndex = ringtoneIndex;
+            this.requestedAt = requestedAt;
+        }
+        
+        void finish() {
+            finished = true;
+        }
+        
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+            AudioTrack track = null;
+            RandomAccessFile file = null;
+            try {
+                file = new RandomAccessFile(pcm, "r");
+                if (file.length() <= HEADER_BYTES || file.readInt() != PCM_MAGIC) {
+                    pcm.delete();
+                    throw new IOException("Invalid cache file " + pcm);
+                }
+                int sampleRate = file.readInt();
+                int channelMask = file.readInt() == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+                int bufferSize = Math.max(AudioTrack.getMinBufferSize(sampleRate, channelMask,
+                        AudioFormat.ENCODING_PCM_16BIT), 4096);
+                
+                track = new AudioTrack.Builder()
+                        .setAudioAttributes(new AudioAttributes.Builder()
+                                .setUsage(AudioAttributes.USAGE_ALARM)
+                                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                                .build())
+                        .setAudioFormat(new AudioFormat.Builder()
+                                .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                                .setSampleRate(sampleRate)
+                                .setChannelMask(channelMask)
+                                .build())
+                        .setBufferSizeInBytes(bufferSize)
+                        .setTransferMode(AudioTrack.MODE_STREAM)
+                        .build();
+                if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+                    throw new IOException("AudioTrack not initialized");
+                }
+                track.play();
+                
+                byte[] buffer = new byte[bufferSize];
+                boolean firstWrite = true;
+                while (!finished) {
+                    int read = file.read(buffer);
+                    if (read <= 0) {
+                        file.seek(HEADER_BYTES); // Loop the tone
+                        continue;
+                    }
+                    int written = track.write(buffer, 0, read);
+                    if (written < 0) {
+                        throw new IOException("AudioTrack write failed: " + written); // e.g. ERROR_DEAD_OBJECT
+                    }
+                    if (firstWrite) {
+                        firstWrite = false;
+                        AlarmTelemetry.getInstance(context).mark(alarmId, AlarmTelemetry.STAGE_AUDIBLE);
+                        Log.i(TAG, "First sample after " + (SystemClock.elapsedRealtime() - requestedAt)
+                                + " ms (PCM cache)");
+                    }
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Alarm playback failed; falling back to MediaPlayer", e);
+                onPlaybackFailed(this);
+            } finally {
+                if (track != null) {
+                    try {
+                        track.stop();
+                    } catch (IllegalStateException e) {
+                        // Never started playing
+                    }
+                    track.release();
+                }
+                if (file != null) {
+                    try {
+                        file.close();
+                    } catch (IOException e) {
+                        // Nothing left to clean up
+                    }
+                }
+            }
+        }
+    }
+}
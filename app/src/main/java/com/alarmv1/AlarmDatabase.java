@@ -1,44 +1,149 @@
 package com.alarmv1;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
 
 public class AlarmDatabase extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "alarms.db";
-    private static final int DATABASE_VERSION = 2;
+    static final int DATABASE_VERSION = 6; // Also stamped into AlarmListSnapshot, so a pending migration bypasses it
     private static final String TABLE_ALARMS = "alarms";
     
-    private static final String COLUMN_ID = "id";
-    private static final String COLUMN_HOUR = "hour";
-    private static final String COLUMN_MINUTE = "minute";
-    private static final String COLUMN_LABEL = "label";
-    private static final String COLUMN_ENABLED = "enabled";
-    private static final String COLUMN_REPEAT_DAYS = "repeat_days";
-    private static final String COLUMN_VIBRATE = "vibrate";
-    private static final String COLUMN_RINGTONE_INDEX = "ringtone_index";
+    // Current columns are named in AlarmRowMapper, which reads them
+    private static final String COLUMN_ID = AlarmRowMapper.COLUMN_ID;
+    private static final String COLUMN_HOUR = AlarmRowMapper.COLUMN_HOUR;
+    private static final String COLUMN_MINUTE = AlarmRowMapper.COLUMN_MINUTE;
+    private static final String COLUMN_LABEL = AlarmRowMapper.COLUMN_LABEL;
+    private static final String COLUMN_ENABLED = AlarmRowMapper.COLUMN_ENABLED;
+    private static final String COLUMN_REPEAT_DAYS = "repeat_days"; // Legacy "0101010" TEXT, replaced in version 3
+    private static final String COLUMN_REPEAT_MASK = AlarmRowMapper.COLUMN_REPEAT_MASK;
+    private static final String COLUMN_VIBRATE = AlarmRowMapper.COLUMN_VIBRATE;
+    private static final String COLUMN_RINGTONE_INDEX = AlarmRowMapper.COLUMN_RINGTONE_INDEX;
     
-    public AlarmDatabase(Context context) {
+    // Request codes currently armed with AlarmManager, so cancelling never has to guess
+    private static final String TABLE_REGISTRATIONS = "registrations";
+    private static final String COLUMN_REQUEST_CODE = "request_code";
+    private static final String COLUMN_ALARM_ID = "alarm_id";
+    
+    // One row, bumped by triggers on every change to the alarms table
+    private static final String TABLE_GENERATION = "generation";
+    private static final String COLUMN_VALUE = "value";
+    
+    // Ids renumbered by the version 4 upgrade whose AlarmManager and snooze state is still to be
+    // cleared; exists only until AlarmRescheduleReceiver has done so
+    private static final String TABLE_LEGACY_IDS = "legacy_ids";
+    private static final String COLUMN_OLD_ID = "old_id";
+    
+    // Plain INSERT: a conflicting id fails with its constraint error instead of inserting nothing
+    private static final String SQL_INSERT = "INSERT INTO " + TABLE_ALARMS + " (" +
+            COLUMN_HOUR + ", " + COLUMN_MINUTE + ", " + COLUMN_LABEL + ", " + COLUMN_ENABLED + ", " +
+            COLUMN_REPEAT_MASK + ", " + COLUMN_VIBRATE + ", " + COLUMN_RINGTONE_INDEX + ", " +
+            COLUMN_ID + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_UPDATE = "UPDATE " + TABLE_ALARMS + " SET " +
+            COLUMN_HOUR + " = ?, " + COLUMN_MINUTE + " = ?, " + COLUMN_LABEL + " = ?, " +
+            COLUMN_ENABLED + " = ?, " + COLUMN_REPEAT_MASK + " = ?, " + COLUMN_VIBRATE + " = ?, " +
+            COLUMN_RINGTONE_INDEX + " = ? WHERE " + COLUMN_ID + " = ?";
+    private static final String SQL_SET_ENABLED = "UPDATE " + TABLE_ALARMS + " SET " +
+            COLUMN_ENABLED + " = ? WHERE " + COLUMN_ID + " = ?";
+    private static final String SQL_DELETE = "DELETE FROM " + TABLE_ALARMS + " WHERE " + COLUMN_ID + " = ?";
+    private static final String SQL_GET_BY_ID = "SELECT " + TextUtils.join(", ", AlarmRowMapper.PROJECTION_ALL) +
+            " FROM " + TABLE_ALARMS + " WHERE " + COLUMN_ID + " = ?";
+    private static final String SQL_ADD_REGISTRATION = "INSERT OR REPLACE INTO " + TABLE_REGISTRATIONS + " (" +
+            COLUMN_REQUEST_CODE + ", " + COLUMN_ALARM_ID + ") VALUES (?, ?)";
+    private static final String SQL_CLEAR_REGISTRATIONS = "DELETE FROM " + TABLE_REGISTRATIONS +
+            " WHERE " + COLUMN_ALARM_ID + " = ?";
+    private static final String SQL_GET_GENERATION = "SELECT " + COLUMN_VALUE + " FROM " + TABLE_GENERATION;
+    
+    private static AlarmDatabase instance;
+    
+    // Opened once and kept for the life of the process; never closed per operation
+    private volatile SQLiteDatabase database;
+    private SQLiteStatement insertStatement;
+    private SQLiteStatement updateStatement;
+    private SQLiteStatement setEnabledStatement;
+    private SQLiteStatement deleteStatement;
+    private SQLiteStatement addRegistrationStatement;
+    private SQLiteStatement clearRegistrationsStatement;
+    private SQLiteStatement getGenerationStatement;
+    
+    private AlarmDatabase(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+    
+    public static synchronized AlarmDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmDatabase(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
+    private SQLiteDatabase getDatabase() {
+        SQLiteDatabase db = database;
+        if (db != null) {
+            return db; // Readers skip the lock so they can run alongside a write (WAL)
+        }
+        synchronized (this) {
+            if (database == null) {
+                db = getWritableDatabase();
+                insertStatement = db.compileStatement(SQL_INSERT);
+                updateStatement = db.compileStatement(SQL_UPDATE);
+                setEnabledStatement = db.compileStatement(SQL_SET_ENABLED);
+                deleteStatement = db.compileStatement(SQL_DELETE);
+                addRegistrationStatement = db.compileStatement(SQL_ADD_REGISTRATION);
+                clearRegistrationsStatement = db.compileStatement(SQL_CLEAR_REGISTRATIONS);
+                getGenerationStatement = db.compileStatement(SQL_GET_GENERATION);
+                database = db;
+            }
+            return database;
+        }
     }
     
     @Override
     public void onCreate(SQLiteDatabase db) {
+        // AUTOINCREMENT: ids double as PendingIntent request codes, so a deleted alarm's id is never reused
         String createTable = "CREATE TABLE " + TABLE_ALARMS + " (" +
-                COLUMN_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 COLUMN_HOUR + " INTEGER, " +
                 COLUMN_MINUTE + " INTEGER, " +
                 COLUMN_LABEL + " TEXT, " +
                 COLUMN_ENABLED + " INTEGER, " +
-                COLUMN_REPEAT_DAYS + " TEXT, " +
+                COLUMN_REPEAT_MASK + " INTEGER, " +
                 COLUMN_VIBRATE + " INTEGER, " +
                 COLUMN_RINGTONE_INDEX + " INTEGER)";
         db.execSQL(createTable);
+        createRegistrationsTable(db);
+        createGenerationTable(db);
+    }
+    
+    private void createRegistrationsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_REGISTRATIONS + " (" +
+                COLUMN_REQUEST_CODE + " INTEGER PRIMARY KEY, " +
+                COLUMN_ALARM_ID + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX " + TABLE_REGISTRATIONS + "_" + COLUMN_ALARM_ID + " ON " +
+                TABLE_REGISTRATIONS + " (" + COLUMN_ALARM_ID + ")");
+    }
+    
+    // The triggers bump the generation inside each write's own transaction, bulk writes included.
+    // Rebuilding the alarms table drops them, so a migration that does must call this again.
+    private void createGenerationTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_GENERATION + " (" + COLUMN_VALUE + " INTEGER NOT NULL)");
+        // A random start, so a database restored from a backup won't match a snapshot by chance
+        db.execSQL("INSERT INTO " + TABLE_GENERATION + " VALUES (random() >> 1)");
+        for (String event : new String[]{"INSERT", "UPDATE", "DELETE"}) {
+            db.execSQL("CREATE TRIGGER " + TABLE_ALARMS + "_" + event.toLowerCase(Locale.ROOT) + "_generation AFTER " +
+                    event + " ON " + TABLE_ALARMS + " BEGIN UPDATE " + TABLE_GENERATION + " SET " +
+                    COLUMN_VALUE + " = " + COLUMN_VALUE + " + 1; END");
+        }
     }
     
     @Override
@@ -64,113 +169,280 @@ public class AlarmDatabase extends SQLiteOpenHelper {
             db.execSQL("DROP TABLE " + TABLE_ALARMS);
             db.execSQL("ALTER TABLE " + TABLE_ALARMS + "_new RENAME TO " + TABLE_ALARMS);
         }
+        if (oldVersion < 3) {
+            // Migrate repeat_days TEXT ("1000001", Sunday first) to a repeat_mask INTEGER bitmask
+            StringBuilder mask = new StringBuilder();
+            for (int i = 0; i < 7; i++) {
+                if (i > 0) {
+                    mask.append(" + ");
+                }
+                mask.append("(CASE WHEN substr(").append(COLUMN_REPEAT_DAYS).append(", ").append(i + 1)
+                        .append(", 1) = '1' THEN ").append(1 << i).append(" ELSE 0 END)");
+            }
+            db.execSQL("CREATE TABLE " + TABLE_ALARMS + "_new (" +
+                    COLUMN_ID + " INTEGER PRIMARY KEY, " +
+                    COLUMN_HOUR + " INTEGER, " +
+                    COLUMN_MINUTE + " INTEGER, " +
+                    COLUMN_LABEL + " TEXT, " +
+                    COLUMN_ENABLED + " INTEGER, " +
+                    COLUMN_REPEAT_MASK + " INTEGER, " +
+                    COLUMN_VIBRATE + " INTEGER, " +
+                    COLUMN_RINGTONE_INDEX + " INTEGER)");
+            db.execSQL("INSERT INTO " + TABLE_ALARMS + "_new SELECT " +
+                    COLUMN_ID + ", " + COLUMN_HOUR + ", " + COLUMN_MINUTE + ", " +
+                    COLUMN_LABEL + ", " + COLUMN_ENABLED + ", " + mask + ", " +
+                    COLUMN_VIBRATE + ", " + COLUMN_RINGTONE_INDEX + " FROM " + TABLE_ALARMS);
+            db.execSQL("DROP TABLE " + TABLE_ALARMS);
+            db.execSQL("ALTER TABLE " + TABLE_ALARMS + "_new RENAME TO " + TABLE_ALARMS);
+        }
+        if (oldVersion < 4) {
+            // Ids used to be (int) System.currentTimeMillis(), which made request codes collide.
+            // Renumber densely from 1 in list order and record the old ids. Their registrations and
+            // snoozes are cleared after this transaction commits, by the MY_PACKAGE_REPLACED
+            // reschedule that then re-arms everything under the new codes.
+            List<Integer> oldIds = new ArrayList<>();
+            Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + " FROM " + TABLE_ALARMS + " ORDER BY " +
+                    COLUMN_HOUR + ", " + COLUMN_MINUTE + ", " + COLUMN_ID, null);
+            while (cursor.moveToNext()) {
+                oldIds.add(cursor.getInt(0));
+            }
+            cursor.close();
+            
+            db.execSQL("CREATE TABLE " + TABLE_ALARMS + "_new (" +
+                    COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    COLUMN_HOUR + " INTEGER, " +
+                    COLUMN_MINUTE + " INTEGER, " +
+                    COLUMN_LABEL + " TEXT, " +
+                    COLUMN_ENABLED + " INTEGER, " +
+                    COLUMN_REPEAT_MASK + " INTEGER, " +
+                    COLUMN_VIBRATE + " INTEGER, " +
+                    COLUMN_RINGTONE_INDEX + " INTEGER)");
+            SQLiteStatement copy = db.compileStatement("INSERT INTO " + TABLE_ALARMS + "_new SELECT ?, " +
+                    COLUMN_HOUR + ", " + COLUMN_MINUTE + ", " + COLUMN_LABEL + ", " + COLUMN_ENABLED + ", " +
+                    COLUMN_REPEAT_MASK + ", " + COLUMN_VIBRATE + ", " + COLUMN_RINGTONE_INDEX +
+                    " FROM " + TABLE_ALARMS + " WHERE " + COLUMN_ID + " = ?");
+            for (int i = 0; i < oldIds.size(); i++) {
+                copy.bindLong(1, i + 1);
+                copy.bindLong(2, oldIds.get(i));
+                copy.executeInsert();
+            }
+            copy.close();
+            db.execSQL("DROP TABLE " + TABLE_ALARMS);
+            db.execSQL("ALTER TABLE " + TABLE_ALARMS + "_new RENAME TO " + TABLE_ALARMS);
+            
+            db.execSQL("CREATE TABLE " + TABLE_LEGACY_IDS + " (" + COLUMN_OLD_ID + " INTEGER NOT NULL)");
+            SQLiteStatement record = db.compileStatement("INSERT INTO " + TABLE_LEGACY_IDS + " VALUES (?)");
+            for (int oldId : oldIds) {
+                record.bindLong(1, oldId);
+                record.executeInsert();
+            }
+            record.close();
+        }
+        if (oldVersion < 5) {
+            createRegistrationsTable(db);
+        }
+        if (oldVersion < 6) {
+            createGenerationTable(db);
+        }
     }
     
-    public void addAlarm(Alarm alarm) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_ID, alarm.getId());
-        values.put(COLUMN_HOUR, alarm.getHour());
-        values.put(COLUMN_MINUTE, alarm.getMinute());
-        values.put(COLUMN_LABEL, alarm.getLabel());
-        values.put(COLUMN_ENABLED, alarm.isEnabled() ? 1 : 0);
-        values.put(COLUMN_REPEAT_DAYS, booleanArrayToString(alarm.getRepeatDays()));
-        values.put(COLUMN_VIBRATE, alarm.isVibrate() ? 1 : 0);
-        values.put(COLUMN_RINGTONE_INDEX, alarm.getRingtoneIndex());
-        
-        db.insert(TABLE_ALARMS, null, values);
-        db.close();
-    }
-    
-    public void updateAlarm(Alarm alarm) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_HOUR, alarm.getHour());
-        values.put(COLUMN_MINUTE, alarm.getMinute());
-        values.put(COLUMN_LABEL, alarm.getLabel());
-        values.put(COLUMN_ENABLED, alarm.isEnabled() ? 1 : 0);
-        values.put(COLUMN_REPEAT_DAYS, booleanArrayToString(alarm.getRepeatDays()));
-        values.put(COLUMN_VIBRATE, alarm.isVibrate() ? 1 : 0);
-        values.put(COLUMN_RINGTONE_INDEX, alarm.getRingtoneIndex());
+    public synchronized void addAlarm(Alarm alarm) {
+        getDatabase();
+        insert(alarm);
+    }
+    
+    public synchronized void updateAlarm(Alarm alarm) {
+        getDatabase();
+        bindAlarm(updateStatement, alarm);
+        updateStatement.executeUpdateDelete();
+    }
+    
+    public synchronized void setAlarmEnabled(int id, boolean enabled) {
+        getDatabase();
+        setEnabledStatement.bindLong(1, enabled ? 1 : 0);
+        setEnabledStatement.bindLong(2, id);
+        setEnabledStatement.executeUpdateDelete();
+    }
+    
+    public synchronized void deleteAlarm(int id) {
+        getDatabase();
+        deleteStatement.bindLong(1, id);
+        deleteStatement.executeUpdateDelete();
+    }
+    
+    // Bulk variants run in a single transaction, so N rows cost one commit instead of N
+    public synchronized void addAlarms(Collection<Alarm> alarms) {
+        SQLiteDatabase db = getDatabase();
+        db.beginTransaction();
+        try {
+            for (Alarm alarm : alarms) {
+                insert(alarm);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+    
+    public synchronized void updateAlarms(Collection<Alarm> alarms) {
+        SQLiteDatabase db = getDatabase();
+        db.beginTransaction();
+        try {
+            for (Alarm alarm : alarms) {
+                bindAlarm(updateStatement, alarm);
+                updateStatement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+    
+    public synchronized void setAlarmsEnabled(int[] ids, boolean enabled) {
+        SQLiteDatabase db = getDatabase();
+        db.beginTransaction();
+        try {
+            setEnabledStatement.bindLong(1, enabled ? 1 : 0);
+            for (int id : ids) {
+                setEnabledStatement.bindLong(2, id);
+                setEnabledStatement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+    
+    public synchronized void deleteAlarms(int[] ids) {
+        SQLiteDatabase db = getDatabase();
+        db.beginTransaction();
+        try {
+            for (int id : ids) {
+                deleteStatement.bindLong(1, id);
+                deleteStatement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+    
+    // Changes whenever the alarms table does; AlarmListSnapshot is stamped with it
+    public synchronized long getGeneration() {
+        getDatabase();
+        return getGenerationStatement.simpleQueryForLong();
+    }
+    
+    // Ids the version 4 upgrade renumbered whose old registrations haven't been cleared yet
+    public synchronized List<Integer> getLegacyIds() {
+        SQLiteDatabase db = getDatabase(); // Runs any pending upgrade first
+        List<Integer> oldIds = new ArrayList<>();
+        if (DatabaseUtils.queryNumEntries(db, "sqlite_master", "type = 'table' AND name = ?",
+                new String[]{TABLE_LEGACY_IDS}) == 0) {
+            return oldIds;
+        }
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_OLD_ID + " FROM " + TABLE_LEGACY_IDS, null);
+        while (cursor.moveToNext()) {
+            oldIds.add(cursor.getInt(0));
+        }
+        cursor.close();
+        return oldIds;
+    }
+    
+    public synchronized void clearLegacyIds() {
+        getDatabase().execSQL("DROP TABLE IF EXISTS " + TABLE_LEGACY_IDS);
+    }
+    
+    // Request codes recorded as armed for any of the given alarms
+    public int[] getRegistrations(int[] alarmIds) {
+        if (alarmIds.length == 0) return new int[0];
         
-        db.update(TABLE_ALARMS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(alarm.getId())});
-        db.close();
+        StringBuilder sql = new StringBuilder("SELECT " + COLUMN_REQUEST_CODE + " FROM " + TABLE_REGISTRATIONS +
+                " WHERE " + COLUMN_ALARM_ID + " IN (");
+        for (int i = 0; i < alarmIds.length; i++) {
+            sql.append(i > 0 ? "," : "").append(alarmIds[i]);
+        }
+        Cursor cursor = getDatabase().rawQuery(sql.append(')').toString(), null);
+        int[] requestCodes = new int[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            requestCodes[i] = cursor.getInt(0);
+        }
+        cursor.close();
+        return requestCodes;
     }
     
-    public void deleteAlarm(int id) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_ALARMS, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
-        db.close();
+    // Replaces everything recorded for alarmIds with requestCodes, in one transaction
+    public synchronized void replaceRegistrations(int[] alarmIds, int[] requestCodes) {
+        SQLiteDatabase db = getDatabase();
+        db.beginTransaction();
+        try {
+            for (int id : alarmIds) {
+                clearRegistrationsStatement.bindLong(1, id);
+                clearRegistrationsStatement.executeUpdateDelete();
+            }
+            for (int requestCode : requestCodes) {
+                addRegistration(addRegistrationStatement, requestCode, RequestCodes.alarmIdOf(requestCode));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+    
+    private static void addRegistration(SQLiteStatement statement, int requestCode, int alarmId) {
+        statement.bindLong(1, requestCode);
+        statement.bindLong(2, alarmId);
+        statement.executeInsert();
     }
     
     public Alarm getAlarm(int id) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_ALARMS, null, COLUMN_ID + " = ?", 
-                new String[]{String.valueOf(id)}, null, null, null);
+        // A constant SQL string hits the connection's prepared-statement cache
+        Cursor cursor = getDatabase().rawQuery(SQL_GET_BY_ID, new String[]{String.valueOf(id)});
         
         Alarm alarm = null;
         if (cursor.moveToFirst()) {
-            alarm = cursorToAlarm(cursor);
+            alarm = new AlarmRowMapper(cursor).map();
         }
         cursor.close();
-        db.close();
         return alarm;
     }
     
     public List<Alarm> getAllAlarms() {
-        List<Alarm> alarms = new ArrayList<>();
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_ALARMS, null, null, null, null, null, 
+        Cursor cursor = getDatabase().query(TABLE_ALARMS, AlarmRowMapper.PROJECTION_ALL, null, null, null, null,
                 COLUMN_HOUR + ", " + COLUMN_MINUTE);
-        
-        if (cursor.moveToFirst()) {
-            do {
-                alarms.add(cursorToAlarm(cursor));
-            } while (cursor.moveToNext());
-        }
-        cursor.close();
-        db.close();
-        return alarms;
-    }
-    
-    private Alarm cursorToAlarm(Cursor cursor) {
-        Alarm alarm = new Alarm();
-        alarm.setId(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ID)));
-        alarm.setHour(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_HOUR)));
-        alarm.setMinute(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_MINUTE)));
-        alarm.setLabel(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_LABEL)));
-        alarm.setEnabled(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ENABLED)) == 1);
-        alarm.setRepeatDays(stringToBooleanArray(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_REPEAT_DAYS))));
-        alarm.setVibrate(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_VIBRATE)) == 1);
-        
-        // Handle migration from old ringtone_uri to ringtone_index
         try {
-            alarm.setRingtoneIndex(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_RINGTONE_INDEX)));
-        } catch (IllegalArgumentException e) {
-            // Column doesn't exist, use default
-            alarm.setRingtoneIndex(0);
+            return new AlarmRowMapper(cursor).mapAll();
+        } finally {
+            cursor.close();
         }
-        
-        return alarm;
     }
     
-    private String booleanArrayToString(boolean[] array) {
-        StringBuilder sb = new StringBuilder();
-        for (boolean b : array) {
-            sb.append(b ? "1" : "0");
+    // New alarms (id 0) get the next id from the table's sequence
+    private void insert(Alarm alarm) {
+        bindAlarm(insertStatement, alarm);
+        long rowId = insertStatement.executeInsert();
+        if (alarm.getId() <= 0) {
+            alarm.setId(RequestCodes.checkAlarmId(rowId));
         }
-        return sb.toString();
     }
     
-    private boolean[] stringToBooleanArray(String str) {
-        if (str == null || str.length() != 7) {
-            return new boolean[7];
+    // Binds columns in SQL_INSERT / SQL_UPDATE order, id last
+    private void bindAlarm(SQLiteStatement statement, Alarm alarm) {
+        statement.bindLong(1, alarm.getHour());
+        statement.bindLong(2, alarm.getMinute());
+        if (alarm.getLabel() != null) {
+            statement.bindString(3, alarm.getLabel());
+        } else {
+            statement.bindNull(3);
         }
-        boolean[] array = new boolean[7];
-        for (int i = 0; i < 7; i++) {
-            array[i] = str.charAt(i) == '1';
+        statement.bindLong(4, alarm.isEnabled() ? 1 : 0);
+        statement.bindLong(5, alarm.getRepeatDays());
+        statement.bindLong(6, alarm.isVibrate() ? 1 : 0);
+        statement.bindLong(7, alarm.getRingtoneIndex());
+        if (alarm.getId() > 0) {
+            statement.bindLong(8, alarm.getId());
+        } else {
+            statement.bindNull(8); // Insert only: let the sequence pick
         }
-        return array;
     }
 }
-
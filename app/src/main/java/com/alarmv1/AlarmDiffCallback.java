@@ -0,0 +1,34 @@
+package com.alarmv1;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+
+import java.util.Objects;
+
+// How MainActivity's list diffs two loads: rows are matched by alarm id, and a row whose only
+// change is the enabled flag gets PAYLOAD_ENABLED so just its switch is rebound
+final class AlarmDiffCallback extends DiffUtil.ItemCallback<Alarm> {
+    static final String PAYLOAD_ENABLED = "enabled";
+    
+    @Override
+    public boolean areItemsTheSame(@NonNull Alarm oldItem, @NonNull Alarm newItem) {
+        return oldItem.getId() == newItem.getId();
+    }
+    
+    @Override
+    public boolean areContentsTheSame(@NonNull Alarm oldItem, @NonNull Alarm newItem) {
+        return oldItem.isEnabled() == newItem.isEnabled() && isSameDisplay(oldItem, newItem);
+    }
+    
+    @Override
+    public Object getChangePayload(@NonNull Alarm oldItem, @NonNull Alarm newItem) {
+        return isSameDisplay(oldItem, newItem) ? PAYLOAD_ENABLED : null;
+    }
+    
+    private static boolean isSameDisplay(Alarm oldItem, Alarm newItem) {
+        return oldItem.getHour() == newItem.getHour()
+                && oldItem.getMinute() == newItem.getMinute()
+                && oldItem.getRepeatDays() == newItem.getRepeatDays()
+                && Objects.equals(oldItem.getLabel(), newItem.getLabel());
+    }
+}
@@ -0,0 +1,111 @@
+package com.alarmv1;
+
+import android.content.Context;
+import android.text.format.DateFormat;
+
+import java.text.DateFormatSymbols;
+import java.util.Locale;
+
+// Display strings for every minute of the day and every repeat mask, built once so list binds
+// and notifications only do array lookups
+public class AlarmFormatter {
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final String[] DAY_NAMES = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
+    
+    private static final String[] TIMES_24 = buildTimes24();
+    private static final String[] REPEAT_LABELS = buildRepeatLabels();
+    
+    // 12-hour strings depend on the locale's AM/PM markers; rebuilt only when the locale changes
+    private static volatile Times12 times12;
+    
+    private AlarmFormatter() {
+    }
+    
+    public static String getTime24(int hour, int minute) {
+        return TIMES_24[hour * 60 + minute];
+    }
+    
+    public static String getTime(Context context, int hour, int minute) {
+        return getTimeTable(context)[hour * 60 + minute];
+    }
+    
+    // Indexed by minute of day; follows the user's 12/24-hour setting and locale
+    public static String[] getTimeTable(Context context) {
+        if (DateFormat.is24HourFormat(context)) {
+            return TIMES_24;
+        }
+        Locale locale = Locale.getDefault();
+        Times12 table = times12;
+        if (table == null || !table.locale.equals(locale)) {
+            table = new Times12(locale);
+            times12 = table;
+        }
+        return table.times;
+    }
+    
+    public static String getRepeatText(int repeatMask) {
+        return REPEAT_LABELS[repeatMask & 0x7F];
+    }
+    
+    private static String[] buildTimes24() {
+        String[] times = new String[MINUTES_PER_DAY];
+        char[] text = new char[5];
+        text[2] = ':';
+        for (int i = 0; i < MINUTES_PER_DAY; i++) {
+            int hour = i / 60;
+            int minute = i % 60;
+            text[0] = (char) ('0' + hour / 10);
+            text[1] = (char) ('0' + hour % 10);
+            text[3] = (char) ('0' + minute / 10);
+            text[4] = (char) ('0' + minute % 10);
+            times[i] = new String(text);
+        }
+        return times;
+    }
+    
+    private static String[] buildRepeatLabels() {
+        String[] labels = new String[128];
+        for (int mask = 0; mask < 128; mask++) {
+            if (mask == 0) {
+                labels[mask] = "";
+            } else if (mask == 0x7F) {
+                labels[mask] = "Every day";
+            } else {
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < 7; i++) {
+                    if ((mask & (1 << i)) != 0) {
+                        if (text.length() > 0) {
+                            text.append(", ");
+                        }
+                        text.append(DAY_NAMES[i]);
+                    }
+                }
+                labels[mask] = text.toString();
+            }
+        }
+        return labels;
+    }
+    
+    private static class Times12 {
+        final Locale locale;
+        final String[] times = new String[MINUTES_PER_DAY];
+        
+        Times12(Locale locale) {
+            this.locale = locale;
+            String[] amPm = DateFormatSymbols.getInstance(locale).getAmPmStrings();
+            StringBuilder text = new StringBuilder(12);
+            for (int i = 0; i < MINUTES_PER_DAY; i++) {
+                int hour = i / 60;
+                int minute = i % 60;
+                int displayHour = hour % 12 == 0 ? 12 : hour % 12;
+                text.setLength(0);
+                text.append(displayHour).append(':');
+                if (minute < 10) {
+                    text.append('0');
+                }
+                text.append(minute).append(' ').append(amPm[hour < 12 ? 0 : 1]);
+                times[i] = text.toString();
+            }
+        }
+    }
+}
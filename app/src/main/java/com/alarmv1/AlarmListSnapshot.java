@@ -0,0 +1,220 @@
+package com.alarmv1;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// The alarm table in list order as a memory-mapped file, so startup paths get the alarms without
+// querying SQLite: MainActivity paints from it, and AlarmRepository loads from it (which covers the
+// reschedule receivers) unless it is missing, from another format or schema version, fails its
+// checksum, or carries a different generation than the database. AlarmRepository deletes it before
+// each database write and rewrites it after, so a write interrupted in between leaves no snapshot
+// rather than a stale one; the generation also catches a database replaced underneath it.
+//
+// Layout: magic i32, format version i32, schema version i32, record count i32, label bytes i32,
+// CRC32 of everything after the header i32, database generation i64; then fixed-width records
+// (id i32, hour u8, minute u8, repeat mask u8, flags u8, ringtone index i32, label offset i32,
+// label length i32); then the UTF-8 labels. Plain java.nio, so the benchmark module can time it
+// on the JVM.
+final class AlarmListSnapshot {
+    private static final int MAGIC = 0x414C5333; // "ALS3"
+    private static final int FORMAT_VERSION = 3;
+    private static final int HEADER_BYTES = 32;
+    private static final int RECORD_BYTES = 20;
+    private static final int FLAG_ENABLED = 1;
+    private static final int FLAG_VIBRATE = 2;
+    private static final int CHECKSUM_CHUNK = 4096;
+    
+    private final File file;
+    
+    AlarmListSnapshot(File file) {
+        this.file = file;
+    }
+    
+    // Null unless the file is intact and was written for this schema version; the caller checks
+    // the generation, which needs the database
+    Contents read(int schemaVersion) {
+        if (!file.exists()) return null;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            long length = raf.length();
+            if (length < HEADER_BYTES) return null;
+            // The mapping stays valid after the channel closes
+            ByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != FORMAT_VERSION || map.getInt(8) != schemaVersion) {
+                return null;
+            }
+            int count = map.getInt(12);
+            int labelBytes = map.getInt(16);
+            if (count < 0 || labelBytes < 0
+                    || HEADER_BYTES + (long) count * RECORD_BYTES + labelBytes != length
+                    || map.getInt(20) != checksum(map, HEADER_BYTES, (int) length)) {
+                return null;
+            }
+            return new Contents(map, count, map.getLong(24));
+        } catch (IOException e) {
+            return null; // The database is the source of truth
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    // Read-only; nothing to lose
+                }
+            }
+        }
+    }
+    
+    // Written beside the old file and renamed over it, so a reader never maps half a list
+    void write(List<Alarm> alarms, int schemaVersion, long generation) throws IOException {
+        byte[][] labels = new byte[alarms.size()][];
+        int labelBytes = 0;
+        for (int i = 0; i < labels.length; i++) {
+            String label = alarms.get(i).getLabel();
+            labels[i] = label != null ? label.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            labelBytes += labels[i].length;
+        }
+        
+        int recordsEnd = HEADER_BYTES + alarms.size() * RECORD_BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(recordsEnd + labelBytes);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(schemaVersion)
+                .putInt(alarms.size()).putInt(labelBytes).putInt(0).putLong(generation);
+        int labelOffset = recordsEnd;
+        for (int i = 0; i < labels.length; i++) {
+            Alarm alarm = alarms.get(i);
+            buffer.putInt(alarm.getId())
+                    .put((byte) alarm.getHour())
+                    .put((byte) alarm.getMinute())
+                    .put(alarm.getRepeatDays())
+                    .put((byte) ((alarm.isEnabled() ? FLAG_ENABLED : 0) | (alarm.isVibrate() ? FLAG_VIBRATE : 0)))
+                    .putInt(alarm.getRingtoneIndex())
+                    .putInt(labelOffset)
+                    .putInt(labels[i].length);
+            labelOffset += labels[i].length;
+        }
+        for (byte[] label : labels) {
+            buffer.put(label);
+        }
+        buffer.putInt(20, checksum(buffer, HEADER_BYTES, buffer.capacity()));
+        buffer.rewind();
+        
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot move " + temp + " into place");
+        }
+    }
+    
+    void invalidate() {
+        file.delete();
+    }
+    
+    // CRC32.update(ByteBuffer) needs API 26, so the bytes pass through a small scratch array
+    private static int checksum(ByteBuffer buffer, int from, int to) {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[Math.min(CHECKSUM_CHUNK, Math.max(to - from, 0))];
+        ByteBuffer view = buffer.duplicate();
+        view.limit(to);
+        view.position(from);
+        while (view.hasRemaining()) {
+            int size = Math.min(chunk.length, view.remaining());
+            view.get(chunk, 0, size);
+            crc.update(chunk, 0, size);
+        }
+        return (int) crc.getValue();
+    }
+    
+    // Records are read in place from the mapping; only labels are decoded, and only on request
+    static final class Contents {
+        private final ByteBuffer map;
+        private final int size;
+        private final long generation;
+        
+        private Contents(ByteBuffer map, int size, long generation) {
+            this.map = map;
+            this.size = size;
+            this.generation = generation;
+        }
+        
+        int size() {
+            return size;
+        }
+        
+        // AlarmDatabase.getGeneration() as of the write
+        long getGeneration() {
+            return generation;
+        }
+        
+        int getId(int index) {
+            return map.getInt(offset(index));
+        }
+        
+        int getHour(int index) {
+            return map.get(offset(index) + 4);
+        }
+        
+        int getMinute(int index) {
+            return map.get(offset(index) + 5);
+        }
+        
+        byte getRepeatDays(int index) {
+            return map.get(offset(index) + 6);
+        }
+        
+        boolean isEnabled(int index) {
+            return (map.get(offset(index) + 7) & FLAG_ENABLED) != 0;
+        }
+        
+        boolean isVibrate(int index) {
+            return (map.get(offset(index) + 7) & FLAG_VIBRATE) != 0;
+        }
+        
+        int getRingtoneIndex(int index) {
+            return map.getInt(offset(index) + 8);
+        }
+        
+        String getLabel(int index) {
+            int start = map.getInt(offset(index) + 12);
+            int length = map.getInt(offset(index) + 16);
+            byte[] bytes = new byte[length];
+            ByteBuffer view = map.duplicate();
+            view.position(start);
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        Alarm get(int index) {
+            return new Alarm(getId(index), getHour(index), getMinute(index), getLabel(index), isEnabled(index),
+                    getRepeatDays(index), isVibrate(index), getRingtoneIndex(index));
+        }
+        
+        List<Alarm> toList() {
+            List<Alarm> alarms = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                alarms.add(get(i));
+            }
+            return alarms;
+        }
+        
+        private static int offset(int index) {
+            return HEADER_BYTES + index * RECORD_BYTES;
+        }
+    }
+}
@@ -6,128 +6,322 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
 public class AlarmManagerHelper {
+    static final String ACTION_NEXT_ALARM = "com.alarmv1.action.NEXT_ALARM";
+    static final String EXTRA_TRIGGER_TIME = "trigger_time";
+    
+    private static final String PREFS_NAME = "alarm_scheduler";
+    private static final String KEY_NEXT_ALARM_ONLY = "next_alarm_only";
+    // The action keeps this PendingIntent distinct from the per-alarm ones sharing request codes
+    private static final int NEXT_ALARM_REQUEST_CODE = 0;
+    
     private static AlarmManager alarmManager;
     private static Context context;
+    private static Boolean nextAlarmOnly;
+    private static AlarmSchedule schedule;
     
     public static void initialize(Context ctx) {
         context = ctx.getApplicationContext();
         alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
     }
     
+    // In next-alarm-only mode a single PendingIntent holds the earliest fire time across all
+    // enabled alarms; AlarmReceiver arms the following one when it fires
+    public static synchronized boolean isNextAlarmOnly() {
+        if (nextAlarmOnly == null) {
+            nextAlarmOnly = context != null && context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                    .getBoolean(KEY_NEXT_ALARM_ONLY, false);
+        }
+        return nextAlarmOnly;
+    }
+    
+    public static void setNextAlarmOnly(boolean enabled) {
+        if (alarmManager == null || enabled == isNextAlarmOnly()) return;
+        
+        List<Alarm> alarms = AlarmRepository.getInstance(context).getAlarms();
+        if (enabled) {
+            cancelAlarms(alarms);
+        } else {
+            cancelNextAlarm();
+        }
+        synchronized (AlarmManagerHelper.class) {
+            nextAlarmOnly = enabled;
+        }
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putBoolean(KEY_NEXT_ALARM_ONLY, enabled)
+                .apply();
+        if (enabled) {
+            scheduleNextAlarm(alarms, System.currentTimeMillis());
+        } else {
+            setAlarms(alarms);
+        }
+    }
+    
+    // Also drops any snooze left from the alarm's previous version, so an edit starts clean
     public static void setAlarm(Alarm alarm) {
         if (alarm == null || alarmManager == null) return;
+        SnoozeScheduler.clear(context, alarm.getId());
+        // Decode the tone now so ringing doesn't wait on codec setup
+        AlarmAudioEngine.getInstance(context).prepare(alarm.getRingtoneIndex());
+        if (isNextAlarmOnly()) {
+            scheduleNextAlarm();
+            return;
+        }
+        
+        updateRegistrations(new int[]{alarm.getId()}, arm(alarm));
+    }
+    
+    // Arms every enabled alarm in the collection and disarms the rest; pairs with the
+    // repository's bulk writes. Registrations are updated in one transaction.
+    public static void setAlarms(Collection<Alarm> alarms) {
+        if (alarms == null || alarmManager == null) return;
+        if (isNextAlarmOnly()) {
+            scheduleNextAlarm();
+            return;
+        }
+        
+        int[] alarmIds = new int[alarms.size()];
+        int[] requestCodes = new int[alarms.size() * AlarmSchedule.MAX_REGISTRATIONS];
+        int idCount = 0;
+        int codeCount = 0;
+        for (Alarm alarm : alarms) {
+            alarmIds[idCount++] = alarm.getId();
+            if (alarm.isEnabled()) {
+                AlarmAudioEngine.getInstance(context).prepare(alarm.getRingtoneIndex());
+                for (int requestCode : arm(alarm)) {
+                    requestCodes[codeCount++] = requestCode;
+                }
+            }
+        }
+        updateRegistrations(alarmIds, Arrays.copyOf(requestCodes, codeCount));
+    }
+    
+    public static void cancelAlarms(Collection<Alarm> alarms) {
+        if (alarms == null || alarmManager == null) return;
+        if (isNextAlarmOnly()) {
+            scheduleNextAlarm();
+            return;
+        }
+        
+        int[] alarmIds = new int[alarms.size()];
+        int count = 0;
+        for (Alarm alarm : alarms) {
+            alarmIds[count++] = alarm.getId();
+        }
+        updateRegistrations(alarmIds, new int[0]);
+    }
+    
+    // Arms the registrations AlarmSchedule plans for the alarm; returns their request codes
+    private static int[] arm(Alarm alarm) {
+        int[] requestCodes = new int[AlarmSchedule.MAX_REGISTRATIONS];
+        long[] triggerTimes = new long[AlarmSchedule.MAX_REGISTRATIONS];
+        int count = getSchedule().plan(alarm.getId(), alarm.getHour(), alarm.getMinute(), alarm.getRepeatDays(),
+                System.currentTimeMillis(), requestCodes, triggerTimes);
         
+        // One Intent serves every registration of this alarm; PendingIntent copies it, so only
+        // the payload (which carries each registration's fire time) is swapped in between
         Intent intent = new Intent(context, AlarmReceiver.class);
-        intent.putExtra("alarm_id", alarm.getId());
-        intent.putExtra("alarm_hour", alarm.getHour());
-        intent.putExtra("alarm_minute", alarm.getMinute());
-        intent.putExtra("alarm_label", alarm.getLabel());
-        intent.putExtra("alarm_vibrate", alarm.isVibrate());
-        intent.putExtra("alarm_ringtone_index", alarm.getRingtoneIndex());
+        for (int i = 0; i < count; i++) {
+            intent.putExtra(AlarmPayload.EXTRA_PAYLOAD, AlarmPayload.of(alarm, triggerTimes[i]).toByteArray());
+            PendingIntent pendingIntent = PendingIntent.getBroadcast(
+                    context,
+                    requestCodes[i],
+                    intent,
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+            );
+            setExact(triggerTimes[i], pendingIntent);
+        }
+        return Arrays.copyOf(requestCodes, count);
+    }
+    
+    private static synchronized AlarmSchedule getSchedule() {
+        if (schedule == null) {
+            schedule = new AlarmSchedule(NextAlarmCalculator.getDefault());
+        }
+        return schedule;
+    }
+    
+    // A registration fired: repeating alarms move that registration to next week, one-shot
+    // alarms are done and get switched off. Runs off the main thread after the alarm is shown.
+    static void onAlarmFired(Context ctx, int alarmId) {
+        initialize(ctx);
+        // A regular firing starts a new ring: reset the snooze count and drop any snooze left
+        // over from a ring that timed out or whose service was killed
+        SnoozeScheduler.clear(context, alarmId);
+        AlarmRepository alarmRepository = AlarmRepository.getInstance(context);
+        Alarm alarm = alarmRepository.getAlarm(alarmId);
+        if (alarm == null || !alarm.isEnabled()) return;
         
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                context,
-                alarm.getId(),
-                intent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
+        if (alarm.isRepeating()) {
+            setAlarm(alarm);
+        } else {
+            alarmRepository.setAlarmEnabled(alarmId, false);
+            cancelAlarm(alarm);
+        }
+    }
+    
+    // Makes requestCodes the complete set of registrations for alarmIds: anything recorded
+    // for them before but not re-armed now (e.g. a repeat day removed in an edit) is cancelled
+    private static synchronized void updateRegistrations(int[] alarmIds, int[] requestCodes) {
+        AlarmDatabase alarmDatabase = AlarmDatabase.getInstance(context);
+        int[] armed = requestCodes.clone();
+        Arrays.sort(armed);
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        for (int requestCode : alarmDatabase.getRegistrations(alarmIds)) {
+            if (Arrays.binarySearch(armed, requestCode) < 0) {
+                cancelIfArmed(context, alarmManager, requestCode, intent);
+            }
+        }
+        alarmDatabase.replaceRegistrations(alarmIds, requestCodes);
+    }
+    
+    // Re-arms every enabled alarm after boot, a clock or zone change, or an app update; returns
+    // how many alarms were armed. Safe to repeat: each registration replaces its own PendingIntent.
+    static int rescheduleAll() {
+        if (alarmManager == null) return 0;
         
-        long triggerTime = alarm.getNextAlarmTime();
+        AlarmRepository alarmRepository = AlarmRepository.getInstance(context);
+        alarmRepository.refreshFireTimes();
+        if (isNextAlarmOnly()) {
+            scheduleNextAlarm();
+            return 1;
+        }
         
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerTime, pendingIntent);
-        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            alarmManager.setExact(AlarmManager.RTC_WAKEUP, triggerTime, pendingIntent);
+        List<Alarm> alarms = alarmRepository.getAlarms();
+        setAlarms(alarms);
+        int armed = 0;
+        for (Alarm alarm : alarms) {
+            if (alarm.isEnabled()) {
+                armed++;
+            }
+        }
+        return armed;
+    }
+    
+    public static void scheduleNextAlarm() {
+        if (alarmManager == null) return;
+        
+        // The repository's fire-time heap answers this without scanning every alarm
+        Alarm next = AlarmRepository.getInstance(context).getNextAlarm();
+        if (next == null) {
+            cancelNextAlarm();
         } else {
-            alarmManager.set(AlarmManager.RTC_WAKEUP, triggerTime, pendingIntent);
+            armNextAlarm(next.getNextAlarmTime());
         }
+    }
+    
+    // Arms the single next-alarm PendingIntent for the earliest occurrence strictly after `after`
+    static void scheduleNextAlarm(List<Alarm> alarms, long after) {
+        if (alarmManager == null) return;
         
-        // For repeating alarms, we'll set individual alarms for each day
-        // Note: Android's setRepeating is not exact, so we use setExact for each occurrence
-        if (alarm.isRepeating()) {
-            boolean[] repeatDays = alarm.getRepeatDays();
-            java.util.Calendar calendar = java.util.Calendar.getInstance();
-            calendar.set(java.util.Calendar.HOUR_OF_DAY, alarm.getHour());
-            calendar.set(java.util.Calendar.MINUTE, alarm.getMinute());
-            calendar.set(java.util.Calendar.SECOND, 0);
-            calendar.set(java.util.Calendar.MILLISECOND, 0);
-            
-            // Calendar.DAY_OF_WEEK: Sunday=1, Monday=2, ..., Saturday=7
-            // Our array: Sunday=0, Monday=1, ..., Saturday=6
-            int currentDayOfWeek = calendar.get(java.util.Calendar.DAY_OF_WEEK);
-            int currentDayIndex = currentDayOfWeek - 1;
-            
-            for (int i = 0; i < 7; i++) {
-                if (repeatDays[i]) {
-                    int daysUntil = (i - currentDayIndex + 7) % 7;
-                    if (daysUntil == 0 && calendar.getTimeInMillis() <= System.currentTimeMillis()) {
-                        daysUntil = 7; // Next week if time has passed today
-                    }
-                    
-                    calendar.add(java.util.Calendar.DAY_OF_YEAR, daysUntil);
-                    long repeatTime = calendar.getTimeInMillis();
-                    calendar.add(java.util.Calendar.DAY_OF_YEAR, -daysUntil); // Reset
-                    
-                    Intent repeatIntent = new Intent(context, AlarmReceiver.class);
-                    repeatIntent.putExtra("alarm_id", alarm.getId());
-                    repeatIntent.putExtra("alarm_hour", alarm.getHour());
-                    repeatIntent.putExtra("alarm_minute", alarm.getMinute());
-                    repeatIntent.putExtra("alarm_label", alarm.getLabel());
-                    repeatIntent.putExtra("alarm_vibrate", alarm.isVibrate());
-                    repeatIntent.putExtra("alarm_ringtone_index", alarm.getRingtoneIndex());
-                    
-                    PendingIntent repeatPendingIntent = PendingIntent.getBroadcast(
-                            context,
-                            alarm.getId() * 100 + i,
-                            repeatIntent,
-                            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-                    );
-                    
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                        alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, repeatTime, repeatPendingIntent);
-                    } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                        alarmManager.setExact(AlarmManager.RTC_WAKEUP, repeatTime, repeatPendingIntent);
-                    } else {
-                        alarmManager.set(AlarmManager.RTC_WAKEUP, repeatTime, repeatPendingIntent);
-                    }
+        long triggerTime = Long.MAX_VALUE;
+        NextAlarmCalculator calculator = NextAlarmCalculator.getDefault();
+        for (Alarm alarm : alarms) {
+            if (alarm.isEnabled()) {
+                long time = calculator.nextAlarmTime(alarm.getHour(), alarm.getMinute(), alarm.getRepeatDays(), after);
+                if (time < triggerTime) {
+                    triggerTime = time;
                 }
             }
         }
+        
+        if (triggerTime == Long.MAX_VALUE) {
+            cancelNextAlarm();
+        } else {
+            armNextAlarm(triggerTime);
+        }
     }
     
+    private static void armNextAlarm(long triggerTime) {
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(ACTION_NEXT_ALARM);
+        intent.putExtra(EXTRA_TRIGGER_TIME, triggerTime);
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(
+                context,
+                NEXT_ALARM_REQUEST_CODE,
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        setExact(triggerTime, pendingIntent);
+    }
     
-    public static void cancelAlarm(Alarm alarm) {
-        if (alarm == null || alarmManager == null) return;
-        
+    // Alarms whose occurrence falls exactly on triggerTime, i.e. the ones a next-alarm fire is for
+    static List<Alarm> getAlarmsDueAt(List<Alarm> alarms, long triggerTime) {
+        List<Alarm> due = new ArrayList<>();
+        NextAlarmCalculator calculator = NextAlarmCalculator.getDefault();
+        for (Alarm alarm : alarms) {
+            if (alarm.isEnabled() && calculator.nextAlarmTime(alarm.getHour(), alarm.getMinute(),
+                    alarm.getRepeatDays(), triggerTime - 1) == triggerTime) {
+                due.add(alarm);
+            }
+        }
+        return due;
+    }
+    
+    private static void cancelNextAlarm() {
         Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(ACTION_NEXT_ALARM);
         PendingIntent pendingIntent = PendingIntent.getBroadcast(
                 context,
-                alarm.getId(),
+                NEXT_ALARM_REQUEST_CODE,
                 intent,
                 PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
         );
-        
         alarmManager.cancel(pendingIntent);
         pendingIntent.cancel();
+    }
+    
+    static void setExact(long triggerTime, PendingIntent pendingIntent) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerTime, pendingIntent);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            alarmManager.setExact(AlarmManager.RTC_WAKEUP, triggerTime, pendingIntent);
+        } else {
+            alarmManager.set(AlarmManager.RTC_WAKEUP, triggerTime, pendingIntent);
+        }
+    }
+    
+    // Snoozes aren't in the registrations table, so they are cancelled separately
+    public static void cancelAlarm(Alarm alarm) {
+        if (alarm == null || alarmManager == null) return;
+        SnoozeScheduler.clear(context, alarm.getId());
+        if (isNextAlarmOnly()) {
+            scheduleNextAlarm(); // Callers delete or disable in the database first
+            return;
+        }
         
-        // Cancel repeating alarms
-        if (alarm.isRepeating()) {
-            boolean[] repeatDays = alarm.getRepeatDays();
+        // Exactly the codes recorded as armed, including days since removed from the alarm
+        updateRegistrations(new int[]{alarm.getId()}, new int[0]);
+    }
+    
+    // Cancels registrations made under pre-RequestCodes ids: the id itself, id * 100 + day, and
+    // the snooze code. Lookups use FLAG_NO_CREATE, so codes that were never armed cost nothing.
+    static void cancelLegacyRegistrations(Context ctx, List<Integer> oldIds) {
+        AlarmManager manager = (AlarmManager) ctx.getSystemService(Context.ALARM_SERVICE);
+        if (manager == null) return;
+        
+        Intent intent = new Intent(ctx, AlarmReceiver.class);
+        Intent snoozeIntent = new Intent(ctx, AlarmReceiver.class).setAction(SnoozeScheduler.ACTION_SNOOZE);
+        for (int oldId : oldIds) {
+            cancelIfArmed(ctx, manager, oldId, intent);
+            cancelIfArmed(ctx, manager, oldId, snoozeIntent);
             for (int i = 0; i < 7; i++) {
-                if (repeatDays[i]) {
-                    Intent repeatIntent = new Intent(context, AlarmReceiver.class);
-                    PendingIntent repeatPendingIntent = PendingIntent.getBroadcast(
-                            context,
-                            alarm.getId() * 100 + i,
-                            repeatIntent,
-                            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-                    );
-                    alarmManager.cancel(repeatPendingIntent);
-                    repeatPendingIntent.cancel();
-                }
+                cancelIfArmed(ctx, manager, oldId * 100 + i, intent);
             }
         }
     }
+    
+    private static void cancelIfArmed(Context ctx, AlarmManager manager, int requestCode, Intent intent) {
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(ctx, requestCode, intent,
+                PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE);
+        if (pendingIntent != null) {
+            manager.cancel(pendingIntent);
+            pendingIntent.cancel();
+        }
+    }
 }
-
@@ -0,0 +1,122 @@
+package com.alarmv1;
+
+import android.content.Intent;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Everything the fire path needs about an alarm, packed into one byte[] extra for the
+// AlarmManager -> AlarmReceiver -> AlarmRingingActivity hops instead of six keyed extras.
+// Layout (v1): version u8, id i32, fire time i64, hour u8, minute u8, flags u8,
+// ringtone index i32, label UTF-8 to the end.
+public class AlarmPayload {
+    static final String EXTRA_PAYLOAD = "alarm_payload";
+    
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 1 + 4 + 8 + 1 + 1 + 1 + 4;
+    private static final int FLAG_VIBRATE = 1;
+    
+    private final int alarmId;
+    private final long fireTime;
+    private final int hour;
+    private final int minute;
+    private final boolean vibrate;
+    private final int ringtoneIndex;
+    private final String label;
+    
+    private AlarmPayload(int alarmId, long fireTime, int hour, int minute, boolean vibrate,
+                         int ringtoneIndex, String label) {
+        this.alarmId = alarmId;
+        this.fireTime = fireTime;
+        this.hour = hour;
+        this.minute = minute;
+        this.vibrate = vibrate;
+        this.ringtoneIndex = ringtoneIndex;
+        this.label = label;
+    }
+    
+    public static AlarmPayload of(Alarm alarm, long fireTime) {
+        return new AlarmPayload(alarm.getId(), fireTime, alarm.getHour(), alarm.getMinute(), alarm.isVibrate(),
+                alarm.getRingtoneIndex(), alarm.getLabel());
+    }
+    
+    public AlarmPayload withFireTime(long fireTime) {
+        return new AlarmPayload(alarmId, fireTime, hour, minute, vibrate, ringtoneIndex, label);
+    }
+    
+    public byte[] toByteArray() {
+        byte[] labelBytes = label != null ? label.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        return ByteBuffer.allocate(HEADER_BYTES + labelBytes.length)
+                .put(VERSION)
+                .putInt(alarmId)
+                .putLong(fireTime)
+                .put((byte) hour)
+                .put((byte) minute)
+                .put((byte) (vibrate ? FLAG_VIBRATE : 0))
+                .putInt(ringtoneIndex)
+                .put(labelBytes)
+                .array();
+    }
+    
+    // Null for a payload from an unknown version or a truncated one
+    public static AlarmPayload fromByteArray(byte[] data) {
+        if (data == null || data.length < HEADER_BYTES || data[0] != VERSION) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data, 1, data.length - 1);
+        int alarmId = buffer.getInt();
+        long fireTime = buffer.getLong();
+        int hour = buffer.get();
+        int minute = buffer.get();
+        int flags = buffer.get();
+        int ringtoneIndex = buffer.getInt();
+        String label = new String(data, HEADER_BYTES, data.length - HEADER_BYTES, StandardCharsets.UTF_8);
+        return new AlarmPayload(alarmId, fireTime, hour, minute, (flags & FLAG_VIBRATE) != 0, ringtoneIndex, label);
+    }
+    
+    // PendingIntents armed before the payload existed survive app updates and still carry
+    // the old individual extras, so those are read as a fallback
+    public static AlarmPayload fromIntent(Intent intent) {
+        AlarmPayload payload = fromByteArray(intent.getByteArrayExtra(EXTRA_PAYLOAD));
+        if (payload != null || !intent.hasExtra("alarm_id")) {
+            return payload;
+        }
+        return new AlarmPayload(
+                intent.getIntExtra("alarm_id", -1),
+                0,
+                intent.getIntExtra("alarm_hour", 0),
+                intent.getIntExtra("alarm_minute", 0),
+                intent.getBooleanExtra("alarm_vibrate", true),
+                intent.getIntExtra("alarm_ringtone_index", 0),
+                intent.getStringExtra("alarm_label"));
+    }
+    
+    public int getAlarmId() {
+        return alarmId;
+    }
+    
+    // Scheduled trigger time in epoch millis; 0 when it came from a legacy Intent
+    public long getFireTime() {
+        return fireTime;
+    }
+    
+    public int getHour() {
+        return hour;
+    }
+    
+    public int getMinute() {
+        return minute;
+    }
+    
+    public boolean isVibrate() {
+        return vibrate;
+    }
+    
+    public int getRingtoneIndex() {
+        return ringtoneIndex;
+    }
+    
+    public String getLabel() {
+        return label;
+    }
+}
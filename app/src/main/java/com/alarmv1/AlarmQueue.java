@@ -0,0 +1,166 @@
+package com.alarmv1;
+
+import android.util.SparseIntArray;
+
+import java.util.Arrays;
+
+// Indexed binary min-heap of alarm ids keyed on fire time. The position index makes
+// update and remove O(log n) instead of a linear search.
+class AlarmQueue {
+    private int[] ids = new int[16];
+    private long[] times = new long[16];
+    private int size;
+    private final SparseIntArray positions = new SparseIntArray();
+    
+    int size() {
+        return size;
+    }
+    
+    boolean isEmpty() {
+        return size == 0;
+    }
+    
+    int peekId() {
+        return ids[0];
+    }
+    
+    long peekTime() {
+        return times[0];
+    }
+    
+    // Inserts the id or moves it to its new time
+    void put(int id, long time) {
+        int index = positions.get(id, -1);
+        if (index < 0) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                times = Arrays.copyOf(times, size * 2);
+            }
+            index = size++;
+            ids[index] = id;
+            times[index] = time;
+            positions.put(id, index);
+            siftUp(index);
+            return;
+        }
+        long previous = times[index];
+        times[index] = time;
+        if (time < previous) {
+            siftUp(index);
+        } else {
+            siftDown(index);
+        }
+    }
+    
+    void remove(int id) {
+        int index = positions.get(id, -1);
+        if (index < 0) return;
+        
+        positions.delete(id);
+        size--;
+        if (index == size) return;
+        
+        move(size, index);
+        siftDown(index);
+        siftUp(index);
+    }
+    
+    void clear() {
+        size = 0;
+        positions.clear();
+    }
+    
+    // Copies the ids of the n earliest entries, in fire order, into out; returns the count.
+    // Walks the heap with a frontier heap of positions, so it costs O(n log n) not O(size).
+    int peek(int n, int[] out) {
+        n = Math.min(n, size);
+        if (n == 0) return 0;
+        
+        int[] frontier = new int[n + 1];
+        int frontierSize = 0;
+        frontier[frontierSize++] = 0;
+        int count = 0;
+        while (count < n) {
+            int index = frontier[0];
+            frontier[0] = frontier[--frontierSize];
+            frontierSiftDown(frontier, frontierSize, 0);
+            out[count++] = ids[index];
+            
+            int child = 2 * index + 1;
+            for (int c = child; c <= child + 1 && c < size; c++) {
+                if (frontierSize < frontier.length) {
+                    frontier[frontierSize] = c;
+                    frontierSiftUp(frontier, frontierSize++);
+                }
+            }
+        }
+        return count;
+    }
+    
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (times[parent] <= times[index]) break;
+            swap(index, parent);
+            index = parent;
+        }
+    }
+    
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) break;
+            int smallest = left;
+            if (left + 1 < size && times[left + 1] < times[left]) {
+                smallest = left + 1;
+            }
+            if (times[index] <= times[smallest]) break;
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+    
+    private void swap(int a, int b) {
+        int id = ids[a];
+        long time = times[a];
+        ids[a] = ids[b];
+        times[a] = times[b];
+        ids[b] = id;
+        times[b] = time;
+        positions.put(ids[a], a);
+        positions.put(ids[b], b);
+    }
+    
+    private void move(int from, int to) {
+        ids[to] = ids[from];
+        times[to] = times[from];
+        positions.put(ids[to], to);
+    }
+    
+    private void frontierSiftUp(int[] frontier, int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (times[frontier[parent]] <= times[frontier[index]]) break;
+            int tmp = frontier[parent];
+            frontier[parent] = frontier[index];
+            frontier[index] = tmp;
+            index = parent;
+        }
+    }
+    
+    private void frontierSiftDown(int[] frontier, int frontierSize, int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= frontierSize) break;
+            int smallest = left;
+            if (left + 1 < frontierSize && times[frontier[left + 1]] < times[frontier[left]]) {
+                smallest = left + 1;
+            }
+            if (times[frontier[index]] <= times[frontier[smallest]]) break;
+            int tmp = frontier[smallest];
+            frontier[smallest] = frontier[index];
+            frontier[index] = tmp;
+            index = smallest;
+        }
+    }
+}
@@ -1,87 +1,99 @@
 package com.alarmv1;
 
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
 
-import androidx.core.app.NotificationCompat;
+import java.util.List;
 
 public class AlarmReceiver extends BroadcastReceiver {
-    private static final String CHANNEL_ID = "alarm_channel";
-    private static final int NOTIFICATION_ID = 1000;
+    private static final String TAG = "AlarmReceiver";
+    
+    private static Handler backgroundHandler;
     
     @Override
     public void onReceive(Context context, Intent intent) {
-        int alarmId = intent.getIntExtra("alarm_id", -1);
-        int hour = intent.getIntExtra("alarm_hour", 0);
-        int minute = intent.getIntExtra("alarm_minute", 0);
-        String label = intent.getStringExtra("alarm_label");
-        boolean vibrate = intent.getBooleanExtra("alarm_vibrate", true);
-        int ringtoneIndex = intent.getIntExtra("alarm_ringtone_index", 0);
-        
-        // Create notification channel for Android 8.0+
-        createNotificationChannel(context);
-        
-        // Create intent for AlarmRingingActivity
-        Intent alarmIntent = new Intent(context, AlarmRingingActivity.class);
-        alarmIntent.putExtra("alarm_id", alarmId);
-        alarmIntent.putExtra("alarm_hour", hour);
-        alarmIntent.putExtra("alarm_minute", minute);
-        alarmIntent.putExtra("alarm_label", label);
-        alarmIntent.putExtra("alarm_vibrate", vibrate);
-        alarmIntent.putExtra("alarm_ringtone_index", ringtoneIndex);
-        alarmIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        final long receivedAt = SystemClock.elapsedRealtime();
+        final Context appContext = context.getApplicationContext();
+        if (AlarmManagerHelper.ACTION_NEXT_ALARM.equals(intent.getAction())) {
+            // Needs the alarm table, so finish off the main thread
+            final long triggerTime = intent.getLongExtra(AlarmManagerHelper.EXTRA_TRIGGER_TIME, 0);
+            final PendingResult pendingResult = goAsync();
+            AlarmRepository.getInstance(appContext).executeWrite(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        onNextAlarm(appContext, triggerTime, receivedAt);
+                    } finally {
+                        pendingResult.finish();
+                    }
+                }
+            }, null);
+            return;
+        }
         
-        // Create PendingIntent for full-screen notification
-        PendingIntent fullScreenPendingIntent = PendingIntent.getActivity(
-                context,
-                alarmId,
-                alarmIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
+        final AlarmPayload payload = AlarmPayload.fromIntent(intent);
+        if (payload == null) {
+            Log.w(TAG, "Dropping alarm broadcast without a readable payload");
+            return;
+        }
         
-        // Build notification with full-screen intent
-        String timeString = String.format("%02d:%02d", hour, minute);
-        String notificationText = label != null && !label.isEmpty() ? label : "Alarm";
+        AlarmTelemetry.getInstance(appContext).onReceived(payload, receivedAt);
         
-        NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(context, CHANNEL_ID)
-                .setSmallIcon(android.R.drawable.ic_dialog_alert)
-                .setContentTitle("Alarm: " + timeString)
-                .setContentText(notificationText)
-                .setPriority(NotificationCompat.PRIORITY_HIGH)
-                .setCategory(NotificationCompat.CATEGORY_ALARM)
-                .setFullScreenIntent(fullScreenPendingIntent, true)
-                .setAutoCancel(true)
-                .setDefaults(NotificationCompat.DEFAULT_ALL)
-                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC);
+        // The service starts the sound and posts the notification before any UI exists
+        AlarmRingingService.start(appContext, payload, receivedAt);
         
-        // Show notification
-        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-        if (notificationManager != null) {
-            notificationManager.notify(NOTIFICATION_ID + alarmId, notificationBuilder.build());
+        // Re-arming touches the database, so it happens off the main thread
+        final boolean snoozed = SnoozeScheduler.ACTION_SNOOZE.equals(intent.getAction());
+        final PendingResult pendingResult = goAsync();
+        getBackgroundHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (snoozed) {
+                        SnoozeScheduler.onSnoozeFired(appContext, payload.getAlarmId());
+                    } else {
+                        AlarmManagerHelper.onAlarmFired(appContext, payload.getAlarmId());
+                    }
+                } finally {
+                    pendingResult.finish();
+                }
+            }
+        });
+    }
+    
+    private static synchronized Handler getBackgroundHandler() {
+        if (backgroundHandler == null) {
+            HandlerThread thread = new HandlerThread("alarm-receiver", Process.THREAD_PRIORITY_FOREGROUND);
+            thread.start();
+            backgroundHandler = new Handler(thread.getLooper());
         }
+        return backgroundHandler;
     }
     
-    private void createNotificationChannel(Context context) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel channel = new NotificationChannel(
-                    CHANNEL_ID,
-                    "Alarm Notifications",
-                    NotificationManager.IMPORTANCE_HIGH
-            );
-            channel.setDescription("Channel for alarm notifications");
-            channel.enableVibration(true);
-            channel.enableLights(true);
-            
-            NotificationManager notificationManager = context.getSystemService(NotificationManager.class);
-            if (notificationManager != null) {
-                notificationManager.createNotificationChannel(channel);
+    // Next-alarm-only mode: ring everything due at triggerTime, then arm the following occurrence
+    private void onNextAlarm(Context context, long triggerTime, long receivedAt) {
+        AlarmManagerHelper.initialize(context);
+        AlarmRepository alarmRepository = AlarmRepository.getInstance(context);
+        List<Alarm> alarms = alarmRepository.getAlarms();
+        
+        for (Alarm alarm : AlarmManagerHelper.getAlarmsDueAt(alarms, triggerTime)) {
+            AlarmPayload payload = AlarmPayload.of(alarm, triggerTime);
+            SnoozeScheduler.clear(context, alarm.getId()); // A new ring, as in onAlarmFired
+            AlarmTelemetry.getInstance(context).onReceived(payload, receivedAt);
+            AlarmRingingService.start(context, payload, receivedAt);
+            if (!alarm.isRepeating()) {
+                // One-shot alarms are done once they ring
+                alarm.setEnabled(false);
+                alarmRepository.setAlarmEnabled(alarm.getId(), false);
             }
         }
+        
+        AlarmManagerHelper.scheduleNextAlarm(alarms, triggerTime);
     }
 }
-
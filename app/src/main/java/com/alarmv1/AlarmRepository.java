@@ -0,0 +1,463 @@
+package com.alarmv1;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Process-wide, write-through cache in front of AlarmDatabase. Reads are served from memory;
+// callers always get copies so mutating a returned Alarm never corrupts the indexes.
+// The synchronous methods may hit disk and belong on a worker thread; the UI uses the *Async ones.
+public class AlarmRepository {
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+    
+    private static final Comparator<Alarm> TIME_ORDER = new Comparator<Alarm>() {
+        @Override
+        public int compare(Alarm a, Alarm b) {
+            int byTime = Integer.compare(a.getHour() * 60 + a.getMinute(), b.getHour() * 60 + b.getMinute());
+            return byTime != 0 ? byTime : Integer.compare(a.getId(), b.getId());
+        }
+    };
+    
+    private static final String TAG = "AlarmRepository";
+    private static final String SNAPSHOT_NAME = "alarm_list.snapshot";
+    
+    private static AlarmRepository instance;
+    
+    private final Context context;
+    private final AlarmDatabase alarmDatabase;
+    private final TimeSource timeSource;
+    private final SparseArray<Alarm> alarmsById = new SparseArray<>();
+    private final List<Alarm> alarmsByTime = new ArrayList<>(); // Same order as the list screen
+    private final AlarmQueue fireQueue = new AlarmQueue(); // Enabled alarms only
+    
+    // Reads share the lock; writes and heap refreshes take it exclusively
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+    
+    // Writes are serialized on one thread so they apply in submission order; reads run concurrently
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("alarm-db-write"));
+    private final ExecutorService readExecutor = Executors.newFixedThreadPool(2, new NamedThreadFactory("alarm-db-read"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean loaded;
+    private AlarmListSnapshot snapshot; // Created on first use; resolving its directory touches disk
+    
+    private AlarmRepository(Context context, AlarmDatabase alarmDatabase, TimeSource timeSource) {
+        this.context = context.getApplicationContext();
+        this.alarmDatabase = alarmDatabase;
+        this.timeSource = timeSource;
+    }
+    
+    public static synchronized AlarmRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmRepository(context, AlarmDatabase.getInstance(context), TimeSource.SYSTEM);
+        }
+        return instance;
+    }
+    
+    public List<Alarm> getAlarms() {
+        ensureLoaded();
+        readLock.lock();
+        try {
+            List<Alarm> alarms = new ArrayList<>(alarmsByTime.size());
+            for (Alarm alarm : alarmsByTime) {
+                alarms.add(new Alarm(alarm));
+            }
+            return alarms;
+        } finally {
+            readLock.unlock();
+        }
+    }
+    
+    public Alarm getAlarm(int id) {
+        ensureLoaded();
+        readLock.lock();
+        try {
+            Alarm alarm = alarmsById.get(id);
+            return alarm != null ? new Alarm(alarm) : null;
+        } finally {
+            readLock.unlock();
+        }
+    }
+    
+    // Loads on a reader thread; the callback runs on the main thread
+    public Future<?> getAlarmsAsync(final Callback<List<Alarm>> callback) {
+        return readExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                deliver(callback, getAlarms());
+            }
+        });
+    }
+    
+    // The list as last saved, for painting before getAlarmsAsync returns; delivers null when there
+    // is no usable snapshot or the live list is already in memory. The generation isn't checked
+    // here, to keep SQLite off the first frame: the live list replaces this one moments later.
+    public Future<?> getSnapshotAsync(final Callback<List<Alarm>> callback) {
+        return readExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                AlarmListSnapshot.Contents contents = loaded ? null : getSnapshot().read(AlarmDatabase.DATABASE_VERSION);
+                deliver(callback, contents != null ? contents.toList() : null);
+            }
+        });
+    }
+    
+    public Future<?> getAlarmAsync(final int id, final Callback<Alarm> callback) {
+        return readExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                deliver(callback, getAlarm(id));
+            }
+        });
+    }
+    
+    // Runs work on the serialized writer thread, then onComplete (if any) on the main thread.
+    // Callers bundle the repository write with its AlarmManagerHelper update so both stay off the UI thread.
+    public Future<?> executeWrite(final Runnable work, final Runnable onComplete) {
+        return writeExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                work.run();
+                if (onComplete != null) {
+                    mainHandler.post(onComplete);
+                }
+            }
+        });
+    }
+    
+    public Future<?> addAlarmAsync(final Alarm alarm, Runnable onComplete) {
+        return executeWrite(new Runnable() {
+            @Override
+            public void run() {
+                addAlarm(alarm);
+            }
+        }, onComplete);
+    }
+    
+    public Future<?> updateAlarmAsync(final Alarm alarm, Runnable onComplete) {
+        return executeWrite(new Runnable() {
+            @Override
+            public void run() {
+                updateAlarm(alarm);
+            }
+        }, onComplete);
+    }
+    
+    public Future<?> setAlarmEnabledAsync(final int id, final boolean enabled, Runnable onComplete) {
+        return executeWrite(new Runnable() {
+            @Override
+            public void run() {
+                setAlarmEnabled(id, enabled);
+            }
+        }, onComplete);
+    }
+    
+    public Future<?> deleteAlarmAsync(final int id, Runnable onComplete) {
+        return executeWrite(new Runnable() {
+            @Override
+            public void run() {
+                deleteAlarm(id);
+            }
+        }, onComplete);
+    }
+    
+    public Alarm getNextAlarm() {
+        ensureLoaded();
+        writeLock.lock();
+        try {
+            refreshQueue();
+            return fireQueue.isEmpty() ? null : new Alarm(alarmsById.get(fireQueue.peekId()));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    public List<Alarm> getNextAlarms(int count) {
+        ensureLoaded();
+        writeLock.lock();
+        try {
+            refreshQueue();
+            int[] ids = new int[Math.min(count, fireQueue.size())];
+            int found = fireQueue.peek(count, ids);
+            List<Alarm> alarms = new ArrayList<>(found);
+            for (int i = 0; i < found; i++) {
+                alarms.add(new Alarm(alarmsById.get(ids[i])));
+            }
+            return alarms;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    // Recomputes every queued fire time; needed after the clock or time zone moves, which
+    // can make queued times too late as well as too early
+    public void refreshFireTimes() {
+        ensureLoaded();
+        writeLock.lock();
+        try {
+            for (int i = 0; i < alarmsById.size(); i++) {
+                index(alarmsById.valueAt(i));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    public void addAlarm(Alarm alarm) {
+        ensureLoaded();
+        writeLock.lock();
+        try {
+            getSnapshot().invalidate();
+            alarmDatabase.addAlarm(alarm);
+            put(alarm);
+            saveSnapshot();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    public void addAlarms(Collection<Alarm> alarms) {
+        ensureLoaded();
+        writeLock.lock();
+        try {
+            getSnapshot().invalidate();
+            alarmDatabase.addAlarms(alarms);
+            for (Alarm alarm : alarms) {
+                put(alarm);
+            }
+            saveSnapshot();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    public void updateAlarm(Alarm alarm) {
+        ensureLoaded();
+        writeLock.lock();
+        try {
+            getSnapshot().invalidate();
+            alarmDatabase.updateAlarm(alarm);
+            put(alarm);
+            saveSnapshot();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    public void updateAlarms(Collection<Alarm> alarms) {
+        ensureLoaded();
+        writeLock.lock();
+        try {
+            getSnapshot().invalidate();
+            alarmDatabase.updateAlarms(alarms);
+            for (Alarm alarm : alarms) {
+                put(alarm);
+            }
+            saveSnapshot();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    public void setAlarmEnabled(int id, boolean enabled) {
+        ensureLoaded();
+        writeLock.lock();
+        try {
+            getSnapshot().invalidate();
+            alarmDatabase.setAlarmEnabled(id, enabled);
+            setEnabledInMemory(id, enabled);
+            saveSnapshot();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    public void setAlarmsEnabled(int[] ids, boolean enabled) {
+        ensureLoaded();
+        writeLock.lock();
+        try {
+            getSnapshot().invalidate();
+            alarmDatabase.setAlarmsEnabled(ids, enabled);
+            for (int id : ids) {
+                setEnabledInMemory(id, enabled);
+            }
+            saveSnapshot();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    public void deleteAlarm(int id) {
+        ensureLoaded();
+        writeLock.lock();
+        try {
+            getSnapshot().invalidate();
+            alarmDatabase.deleteAlarm(id);
+            remove(id);
+            saveSnapshot();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    public void deleteAlarms(int[] ids) {
+        ensureLoaded();
+        writeLock.lock();
+        try {
+            getSnapshot().invalidate();
+            alarmDatabase.deleteAlarms(ids);
+            for (int id : ids) {
+                remove(id);
+            }
+            saveSnapshot();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    private synchronized AlarmListSnapshot getSnapshot() {
+        if (snapshot == null) {
+            snapshot = new AlarmListSnapshot(new File(context.getNoBackupFilesDir(), SNAPSHOT_NAME));
+        }
+        return snapshot;
+    }
+    
+    // Called with the write lock held, after each change to the list. Every database write is
+    // preceded by invalidate(), so a crash before this point leaves no snapshot to trust.
+    private void saveSnapshot() {
+        try {
+            getSnapshot().write(alarmsByTime, AlarmDatabase.DATABASE_VERSION, alarmDatabase.getGeneration());
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save the alarm list snapshot", e);
+        }
+    }
+    
+    private <T> void deliver(final Callback<T> callback, final T result) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onResult(result);
+            }
+        });
+    }
+    
+    private void ensureLoaded() {
+        if (loaded) return;
+        writeLock.lock();
+        try {
+            if (!loaded) {
+                // The snapshot spares querying the table on cold starts, including the reschedule
+                // receivers; only the generation is read, to catch a database that moved on without
+                // it (restored from a backup, or a crash between the write and the rewrite)
+                AlarmListSnapshot.Contents contents = getSnapshot().read(AlarmDatabase.DATABASE_VERSION);
+                if (contents != null && contents.getGeneration() != alarmDatabase.getGeneration()) {
+                    contents = null;
+                }
+                if (contents != null) {
+                    for (int i = 0; i < contents.size(); i++) {
+                        put(contents.get(i));
+                    }
+                } else {
+                    for (Alarm alarm : alarmDatabase.getAllAlarms()) {
+                        put(alarm);
+                    }
+                    saveSnapshot(); // First launch after an update, or the last write was interrupted
+                }
+                loaded = true;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    // Entries whose fire time has passed move to their next occurrence; everything below
+    // the heap root is later than it, so only the stale prefix is touched
+    private void refreshQueue() {
+        long now = timeSource.currentTimeMillis();
+        NextAlarmCalculator calculator = NextAlarmCalculator.getDefault();
+        while (!fireQueue.isEmpty() && fireQueue.peekTime() <= now) {
+            Alarm alarm = alarmsById.get(fireQueue.peekId());
+            fireQueue.put(alarm.getId(),
+                    calculator.nextAlarmTime(alarm.getHour(), alarm.getMinute(), alarm.getRepeatDays(), now));
+        }
+    }
+    
+    private void put(Alarm source) {
+        Alarm alarm = new Alarm(source);
+        Alarm previous = alarmsById.get(alarm.getId());
+        if (previous != null) {
+            alarmsByTime.remove(Collections.binarySearch(alarmsByTime, previous, TIME_ORDER));
+        }
+        alarmsById.put(alarm.getId(), alarm);
+        int index = Collections.binarySearch(alarmsByTime, alarm, TIME_ORDER);
+        alarmsByTime.add(index < 0 ? -index - 1 : index, alarm);
+        index(alarm);
+    }
+    
+    private void setEnabledInMemory(int id, boolean enabled) {
+        Alarm alarm = alarmsById.get(id);
+        if (alarm == null) return;
+        alarm.setEnabled(enabled);
+        index(alarm);
+    }
+    
+    private void remove(int id) {
+        Alarm alarm = alarmsById.get(id);
+        if (alarm == null) return;
+        alarmsById.remove(id);
+        alarmsByTime.remove(Collections.binarySearch(alarmsByTime, alarm, TIME_ORDER));
+        fireQueue.remove(id);
+    }
+    
+    private void index(Alarm alarm) {
+        if (alarm.isEnabled()) {
+            fireQueue.put(alarm.getId(), NextAlarmCalculator.getDefault().nextAlarmTime(
+                    alarm.getHour(), alarm.getMinute(), alarm.getRepeatDays(), timeSource.currentTimeMillis()));
+        } else {
+            fireQueue.remove(alarm.getId());
+        }
+    }
+    
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+        
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+        
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
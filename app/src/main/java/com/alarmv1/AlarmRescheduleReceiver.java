@@ -0,0 +1,63 @@
+package com.alarmv1;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+import java.util.TimeZone;
+
+// AlarmManager forgets everything on reboot, and wall-clock or zone changes move every fire time,
+// so these broadcasts re-arm all enabled alarms from the stored table
+public class AlarmRescheduleReceiver extends BroadcastReceiver {
+    private static final String TAG = "AlarmRescheduleReceiver";
+    
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        final String action = intent.getAction();
+        if (!Intent.ACTION_BOOT_COMPLETED.equals(action)
+                && !Intent.ACTION_TIME_CHANGED.equals(action)
+                && !Intent.ACTION_TIMEZONE_CHANGED.equals(action)
+                && !Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)) {
+            return;
+        }
+        
+        final Context appContext = context.getApplicationContext();
+        final PendingResult pendingResult = goAsync();
+        // The repository's writer thread serializes this with other writes and with any
+        // overlapping reschedule (boot and package-replaced often arrive together)
+        AlarmRepository.getInstance(appContext).executeWrite(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long started = SystemClock.elapsedRealtime();
+                    if (Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+                        NextAlarmCalculator.getDefault().setTimeZone(TimeZone.getDefault());
+                    }
+                    AlarmManagerHelper.initialize(appContext);
+                    clearLegacyRegistrations(appContext);
+                    int armed = AlarmManagerHelper.rescheduleAll() + SnoozeScheduler.rescheduleAll(appContext);
+                    Log.i(TAG, action + ": re-armed " + armed + " alarms in "
+                            + (SystemClock.elapsedRealtime() - started) + " ms");
+                } finally {
+                    pendingResult.finish();
+                }
+            }
+        }, null);
+    }
+    
+    // The version 4 upgrade renumbered every alarm and recorded the old ids; with that committed,
+    // cancel what is still armed under them before re-arming under the new ones. Usually this is
+    // MY_PACKAGE_REPLACED's run, but any later one finishes a cleanup the process died during.
+    private static void clearLegacyRegistrations(Context context) {
+        AlarmDatabase db = AlarmDatabase.getInstance(context);
+        List<Integer> oldIds = db.getLegacyIds();
+        if (oldIds.isEmpty()) return;
+        AlarmManagerHelper.cancelLegacyRegistrations(context, oldIds);
+        // Pending snoozes are keyed by the old ids too, and those don't fit a request code
+        SnoozeScheduler.dropLegacy(context, oldIds);
+        db.clearLegacyIds();
+    }
+}
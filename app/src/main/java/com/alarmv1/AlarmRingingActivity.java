@@ -1,11 +1,11 @@
 package com.alarmv1;
 
-import android.media.MediaPlayer;
-import android.media.RingtoneManager;
-import android.net.Uri;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
 import android.os.Bundle;
-import android.os.VibrationEffect;
-import android.os.Vibrator;
+import android.os.IBinder;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.Button;
@@ -13,12 +13,37 @@ import android.widget.TextView;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+// Lock-screen controls for a ringing alarm. AlarmRingingService owns the sound, vibration and
+// wake lock; this screen only binds to it for dismiss and snooze, so it can be delayed or
+// killed without silencing the alarm.
 public class AlarmRingingActivity extends AppCompatActivity {
-    private MediaPlayer mediaPlayer;
-    private Vibrator vibrator;
-    private int alarmId;
+    private AlarmPayload payload;
     private String alarmLabel;
-    private boolean shouldVibrate;
+    private AlarmRingingService ringingService;
+    private boolean bound;
+    
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            ringingService = ((AlarmRingingService.RingingBinder) binder).getService();
+            if (ringingService.getPayload() == null) {
+                // Dismissed or snoozed from the notification before this screen came up
+                finish();
+                return;
+            }
+            ringingService.setStopListener(new Runnable() {
+                @Override
+                public void run() {
+                    finish();
+                }
+            });
+        }
+        
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            ringingService = null;
+        }
+    };
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -33,20 +58,20 @@ public class AlarmRingingActivity extends AppCompatActivity {
         setContentView(R.layout.activity_alarm_ringing);
         
         // Get alarm data from intent
-        alarmId = getIntent().getIntExtra("alarm_id", -1);
-        int hour = getIntent().getIntExtra("alarm_hour", 0);
-        int minute = getIntent().getIntExtra("alarm_minute", 0);
-        alarmLabel = getIntent().getStringExtra("alarm_label");
-        shouldVibrate = getIntent().getBooleanExtra("alarm_vibrate", true);
-        int ringtoneIndex = getIntent().getIntExtra("alarm_ringtone_index", 0);
+        payload = AlarmPayload.fromIntent(getIntent());
+        if (payload == null) {
+            finish();
+            return;
+        }
+        AlarmTelemetry.getInstance(this).mark(payload.getAlarmId(), AlarmTelemetry.STAGE_ACTIVITY);
+        alarmLabel = payload.getLabel();
         
         TextView timeTextView = findViewById(R.id.alarm_time_text);
         TextView labelTextView = findViewById(R.id.alarm_label_text);
         Button dismissButton = findViewById(R.id.btn_dismiss);
         Button snoozeButton = findViewById(R.id.btn_snooze);
         
-        String timeString = String.format("%02d:%02d", hour, minute);
-        timeTextView.setText(timeString);
+        timeTextView.setText(AlarmFormatter.getTime(this, payload.getHour(), payload.getMinute()));
         
         if (alarmLabel != null && !alarmLabel.isEmpty()) {
             labelTextView.setText(alarmLabel);
@@ -55,115 +80,53 @@ public class AlarmRingingActivity extends AppCompatActivity {
             labelTextView.setVisibility(View.GONE);
         }
         
-        // Start alarm sound
-        startAlarmSound(ringtoneIndex);
-        
-        // Start vibration
-        if (shouldVibrate) {
-            startVibration();
-        }
-        
         dismissButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                dismissAlarm();
+                if (ringingService != null) {
+                    ringingService.dismiss();
+                } else {
+                    AlarmRingingService.requestDismiss(AlarmRingingActivity.this);
+                }
+                finish();
             }
         });
         
         snoozeButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                snoozeAlarm();
+                if (ringingService != null) {
+                    ringingService.snooze();
+                } else {
+                    AlarmRingingService.requestSnooze(AlarmRingingActivity.this);
+                }
+                finish();
             }
         });
     }
     
-    private void startAlarmSound(int ringtoneIndex) {
-        try {
-            RingtoneManager ringtoneManager = RingtoneManager.getInstance(this);
-            int resourceId = ringtoneManager.getRingtoneResource(ringtoneIndex);
-            
-            if (resourceId != -1) {
-                mediaPlayer = MediaPlayer.create(this, resourceId);
-                if (mediaPlayer != null) {
-                    mediaPlayer.setLooping(true);
-                    mediaPlayer.start();
-                }
-            } else {
-                // Fallback to default alarm
-                android.media.RingtoneManager ringtoneMgr = new android.media.RingtoneManager(this);
-                Uri alarmUri = ringtoneMgr.getDefaultUri(android.media.RingtoneManager.TYPE_ALARM);
-                if (alarmUri == null) {
-                    alarmUri = ringtoneMgr.getDefaultUri(android.media.RingtoneManager.TYPE_RINGTONE);
-                }
-                mediaPlayer = MediaPlayer.create(this, alarmUri);
-                if (mediaPlayer != null) {
-                    mediaPlayer.setLooping(true);
-                    mediaPlayer.start();
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // No BIND_AUTO_CREATE: if the alarm already stopped there is nothing to control
+        bound = payload != null && bindService(new Intent(this, AlarmRingingService.class), connection, 0);
     }
     
-    private void startVibration() {
-        vibrator = (Vibrator) getSystemService(VIBRATOR_SERVICE);
-        if (vibrator != null && vibrator.hasVibrator()) {
-            long[] pattern = {0, 1000, 500, 1000, 500, 1000};
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-                VibrationEffect vibrationEffect = VibrationEffect.createWaveform(pattern, 0);
-                vibrator.vibrate(vibrationEffect);
-            } else {
-                vibrator.vibrate(pattern, 0);
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (bound) {
+            if (ringingService != null) {
+                ringingService.setStopListener(null);
+                ringingService = null;
             }
-        }
-    }
-    
-    private void dismissAlarm() {
-        stopAlarm();
-        finish();
-    }
-    
-    private void snoozeAlarm() {
-        stopAlarm();
-        
-        // Schedule alarm for 10 minutes later
-        AlarmDatabase alarmDatabase = new AlarmDatabase(this);
-        Alarm alarm = alarmDatabase.getAlarm(alarmId);
-        if (alarm != null) {
-            java.util.Calendar calendar = java.util.Calendar.getInstance();
-            calendar.add(java.util.Calendar.MINUTE, 10);
-            alarm.setHour(calendar.get(java.util.Calendar.HOUR_OF_DAY));
-            alarm.setMinute(calendar.get(java.util.Calendar.MINUTE));
-            alarm.setRepeatDays(new boolean[7]); // Clear repeat for snooze
-            AlarmManagerHelper.setAlarm(alarm);
-        }
-        
-        finish();
-    }
-    
-    private void stopAlarm() {
-        if (mediaPlayer != null) {
-            mediaPlayer.stop();
-            mediaPlayer.release();
-            mediaPlayer = null;
-        }
-        
-        if (vibrator != null) {
-            vibrator.cancel();
+            unbindService(connection);
+            bound = false;
         }
     }
     
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        stopAlarm();
-    }
-    
     @Override
     public void onBackPressed() {
         // Prevent dismissing alarm by back button - must use dismiss button
     }
 }
-
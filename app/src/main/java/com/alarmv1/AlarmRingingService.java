@@ -0,0 +1,311 @@
+package com.alarmv1;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+
+// Owns a ringing alarm: sound, vibration, the alarm notification and a partial wake lock, for as
+// long as it rings. Started straight from AlarmReceiver, so the alarm is audible without waiting
+// for AlarmRingingActivity; the activity (or the notification's actions) only sends controls.
+// A newer alarm firing while one rings takes over the sound and notification.
+public class AlarmRingingService extends Service {
+    private static final String TAG = "AlarmRingingService";
+    private static final String CHANNEL_ID = "alarm_ringing";
+    private static final String LEGACY_CHANNEL_ID = "alarm_channel"; // Sounded on its own; settings are fixed once created
+    private static final int NOTIFICATION_ID = 1000;
+    private static final String ACTION_RING = "com.alarmv1.action.RING";
+    private static final String ACTION_DISMISS = "com.alarmv1.action.DISMISS";
+    private static final String ACTION_SNOOZE = "com.alarmv1.action.SNOOZE_RINGING";
+    private static final String EXTRA_RECEIVED_AT = "received_at";
+    private static final String WAKE_LOCK_TAG = "alarmv1:ringing";
+    
+    // An unattended alarm goes quiet after this long; the wake lock times out with it
+    private static final long RING_TIMEOUT_MS = 10 * 60 * 1000L;
+    // Receive-to-notify time above this is logged as a warning
+    private static final long NOTIFY_BUDGET_MS = 50;
+    private static final long[] VIBRATION_PATTERN = {0, 1000, 500, 1000, 500, 1000};
+    
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final RingingBinder binder = new RingingBinder();
+    
+    private PowerManager.WakeLock wakeLock;
+    private Vibrator vibrator;
+    private AlarmPayload payload; // The alarm ringing now; null once silenced
+    private Runnable stopListener;
+    
+    class RingingBinder extends Binder {
+        AlarmRingingService getService() {
+            return AlarmRingingService.this;
+        }
+    }
+    
+    // Safe from any thread and from the background: exact alarms may start foreground services
+    static void start(Context context, AlarmPayload payload, long receivedAt) {
+        Intent intent = new Intent(context, AlarmRingingService.class)
+                .setAction(ACTION_RING)
+                .putExtra(AlarmPayload.EXTRA_PAYLOAD, payload.toByteArray())
+                .putExtra(EXTRA_RECEIVED_AT, receivedAt);
+        ContextCompat.startForegroundService(context, intent);
+    }
+    
+    // For controls sent before a binding is up; the caller must be allowed to start services
+    static void requestDismiss(Context context) {
+        context.startService(new Intent(context, AlarmRingingService.class).setAction(ACTION_DISMISS));
+    }
+    
+    static void requestSnooze(Context context) {
+        context.startService(new Intent(context, AlarmRingingService.class).setAction(ACTION_SNOOZE));
+    }
+    
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKE_LOCK_TAG);
+        wakeLock.setReferenceCounted(false);
+        vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
+    }
+    
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_DISMISS.equals(action)) {
+            dismiss();
+        } else if (ACTION_SNOOZE.equals(action)) {
+            snooze();
+        } else if (ACTION_RING.equals(action)) {
+            AlarmPayload ringing = AlarmPayload.fromIntent(intent);
+            if (ringing != null) {
+                ring(ringing, intent.getLongExtra(EXTRA_RECEIVED_AT, SystemClock.elapsedRealtime()));
+            } else {
+                Log.w(TAG, "Dropping ring request without a readable payload");
+                if (payload == null) {
+                    // Started with startForegroundService, so it must go foreground before stopping
+                    ServiceCompat.startForeground(this, NOTIFICATION_ID, buildPlaceholderNotification(),
+                            ServiceInfo.FOREGROUND_SERVICE_TYPE_MEDIA_PLAYBACK);
+                    ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+                }
+            }
+        }
+        if (payload == null) {
+            stopSelf(startId);
+        }
+        // A killed ringing service is not restarted silently; the alarm is over
+        return START_NOT_STICKY;
+    }
+    
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+    
+    @Override
+    public void onDestroy() {
+        silence();
+        super.onDestroy();
+    }
+    
+    private void ring(AlarmPayload ringing, long receivedAt) {
+        payload = ringing;
+        wakeLock.acquire(RING_TIMEOUT_MS);
+        
+        // Sound first; the engine hands off to its own thread immediately
+        AlarmAudioEngine.getInstance(this).start(ringing.getAlarmId(), ringing.getRingtoneIndex());
+        if (ringing.isVibrate()) {
+            startVibration();
+        } else if (vibrator != null) {
+            vibrator.cancel();
+        }
+        
+        ServiceCompat.startForeground(this, NOTIFICATION_ID, buildNotification(ringing),
+                ServiceInfo.FOREGROUND_SERVICE_TYPE_MEDIA_PLAYBACK);
+        AlarmTelemetry.getInstance(this).mark(ringing.getAlarmId(), AlarmTelemetry.STAGE_NOTIFIED);
+        long elapsed = SystemClock.elapsedRealtime() - receivedAt;
+        if (elapsed > NOTIFY_BUDGET_MS) {
+            Log.w(TAG, "Receive to notify took " + elapsed + " ms, budget " + NOTIFY_BUDGET_MS + " ms");
+        } else {
+            Log.d(TAG, "Receive to notify took " + elapsed + " ms");
+        }
+        
+        handler.removeCallbacks(ringTimeout);
+        handler.postDelayed(ringTimeout, RING_TIMEOUT_MS);
+    }
+    
+    private final Runnable ringTimeout = new Runnable() {
+        @Override
+        public void run() {
+            Log.i(TAG, "Alarm rang for " + RING_TIMEOUT_MS / 60000 + " minutes unattended; silencing");
+            finishRinging();
+        }
+    };
+    
+    private void startVibration() {
+        if (vibrator == null || !vibrator.hasVibrator()) return;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            vibrator.vibrate(VibrationEffect.createWaveform(VIBRATION_PATTERN, 0));
+        } else {
+            vibrator.vibrate(VIBRATION_PATTERN, 0);
+        }
+    }
+    
+    AlarmPayload getPayload() {
+        return payload;
+    }
+    
+    // Runs on the main thread once the alarm stops ringing for any reason; null to clear
+    void setStopListener(Runnable listener) {
+        stopListener = listener;
+    }
+    
+    // Resets the snooze count and drops a pending snooze of this alarm
+    void dismiss() {
+        if (payload == null) return;
+        final Context appContext = getApplicationContext();
+        final int alarmId = payload.getAlarmId();
+        finishRinging();
+        AlarmRepository.getInstance(appContext).executeWrite(new Runnable() {
+            @Override
+            public void run() {
+                SnoozeScheduler.clear(appContext, alarmId);
+            }
+        }, null);
+    }
+    
+    // Snoozes are armed on their own, so the stored alarm and its schedule stay as they are
+    void snooze() {
+        if (payload == null) return;
+        final Context appContext = getApplicationContext();
+        final AlarmPayload snoozedPayload = payload;
+        final boolean[] snoozed = new boolean[1];
+        finishRinging();
+        AlarmRepository.getInstance(appContext).executeWrite(new Runnable() {
+            @Override
+            public void run() {
+                snoozed[0] = SnoozeScheduler.snooze(appContext, snoozedPayload);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                if (!snoozed[0]) {
+                    Toast.makeText(appContext, "Snooze limit reached", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
+    
+    private void finishRinging() {
+        silence();
+        ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+        if (stopListener != null) {
+            stopListener.run();
+        }
+        stopSelf();
+    }
+    
+    private void silence() {
+        handler.removeCallbacks(ringTimeout);
+        if (payload != null) {
+            AlarmAudioEngine.getInstance(this).stop();
+            if (vibrator != null) {
+                vibrator.cancel();
+            }
+            payload = null;
+        }
+        if (wakeLock != null && wakeLock.isHeld()) {
+            wakeLock.release();
+        }
+    }
+    
+    private Notification buildNotification(AlarmPayload ringing) {
+        int alarmId = ringing.getAlarmId();
+        String label = ringing.getLabel();
+        
+        // Full-screen intent for AlarmRingingActivity, which binds back here for its buttons
+        Intent alarmIntent = new Intent(this, AlarmRingingActivity.class);
+        alarmIntent.putExtra(AlarmPayload.EXTRA_PAYLOAD, ringing.toByteArray());
+        alarmIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        PendingIntent fullScreenPendingIntent = PendingIntent.getActivity(
+                this,
+                alarmId,
+                alarmIntent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        
+        // The notification's own buttons still work when the activity is never shown
+        PendingIntent dismissIntent = PendingIntent.getService(this, 0,
+                new Intent(this, AlarmRingingService.class).setAction(ACTION_DISMISS),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        PendingIntent snoozeIntent = PendingIntent.getService(this, 1,
+                new Intent(this, AlarmRingingService.class).setAction(ACTION_SNOOZE),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        
+        String timeString = AlarmFormatter.getTime(this, ringing.getHour(), ringing.getMinute());
+        String notificationText = label != null && !label.isEmpty() ? label : "Alarm";
+        
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_dialog_alert)
+                .setContentTitle("Alarm: " + timeString)
+                .setContentText(notificationText)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setFullScreenIntent(fullScreenPendingIntent, true)
+                .setContentIntent(fullScreenPendingIntent)
+                .setOngoing(true)
+                .addAction(0, "Snooze", snoozeIntent)
+                .addAction(0, "Dismiss", dismissIntent)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .build();
+    }
+    
+    // Shown only for the moment it takes to stop after a ring request that can't be read
+    private Notification buildPlaceholderNotification() {
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_dialog_alert)
+                .setContentTitle("Alarm")
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .build();
+    }
+    
+    // Registered once from AlarmApplication; creating an existing channel is a no-op. The service
+    // plays the sound itself, so the channel stays silent rather than adding its own alert tone.
+    static void createNotificationChannel(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(
+                    CHANNEL_ID,
+                    "Alarm Notifications",
+                    NotificationManager.IMPORTANCE_HIGH
+            );
+            channel.setDescription("Channel for alarm notifications");
+            channel.setSound(null, null);
+            channel.enableVibration(false);
+            channel.enableLights(true);
+            
+            NotificationManager notificationManager = context.getSystemService(NotificationManager.class);
+            if (notificationManager != null) {
+                notificationManager.createNotificationChannel(channel);
+                notificationManager.deleteNotificationChannel(LEGACY_CHANNEL_ID);
+            }
+        }
+    }
+}
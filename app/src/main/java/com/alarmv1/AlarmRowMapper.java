@@ -0,0 +1,71 @@
+package com.alarmv1;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads rows of AlarmDatabase's alarm table into Alarms. Column indices are looked up once per
+// cursor rather than once per field per row; a column left out of the query's projection keeps
+// the value new Alarm() gives it, so slim queries map through the same code.
+final class AlarmRowMapper {
+    static final String COLUMN_ID = "id";
+    static final String COLUMN_HOUR = "hour";
+    static final String COLUMN_MINUTE = "minute";
+    static final String COLUMN_LABEL = "label";
+    static final String COLUMN_ENABLED = "enabled";
+    static final String COLUMN_REPEAT_MASK = "repeat_mask";
+    static final String COLUMN_VIBRATE = "vibrate";
+    static final String COLUMN_RINGTONE_INDEX = "ringtone_index";
+    
+    // Every field of an Alarm. Only the id is required; a query that needs less (e.g. id, hour,
+    // minute, enabled and repeat mask to plan registrations) can skip the label and tone columns.
+    static final String[] PROJECTION_ALL = {COLUMN_ID, COLUMN_HOUR, COLUMN_MINUTE, COLUMN_LABEL,
+            COLUMN_ENABLED, COLUMN_REPEAT_MASK, COLUMN_VIBRATE, COLUMN_RINGTONE_INDEX};
+    
+    private final Cursor cursor;
+    // -1 where the column is not in the projection
+    private final int idIndex;
+    private final int hourIndex;
+    private final int minuteIndex;
+    private final int labelIndex;
+    private final int enabledIndex;
+    private final int repeatMaskIndex;
+    private final int vibrateIndex;
+    private final int ringtoneIndex;
+    
+    AlarmRowMapper(Cursor cursor) {
+        this.cursor = cursor;
+        idIndex = cursor.getColumnIndexOrThrow(COLUMN_ID);
+        hourIndex = cursor.getColumnIndex(COLUMN_HOUR);
+        minuteIndex = cursor.getColumnIndex(COLUMN_MINUTE);
+        labelIndex = cursor.getColumnIndex(COLUMN_LABEL);
+        enabledIndex = cursor.getColumnIndex(COLUMN_ENABLED);
+        repeatMaskIndex = cursor.getColumnIndex(COLUMN_REPEAT_MASK);
+        vibrateIndex = cursor.getColumnIndex(COLUMN_VIBRATE);
+        ringtoneIndex = cursor.getColumnIndex(COLUMN_RINGTONE_INDEX);
+    }
+    
+    // The row the cursor is on
+    Alarm map() {
+        Alarm alarm = new Alarm();
+        alarm.setId(cursor.getInt(idIndex));
+        if (hourIndex >= 0) alarm.setHour(cursor.getInt(hourIndex));
+        if (minuteIndex >= 0) alarm.setMinute(cursor.getInt(minuteIndex));
+        if (labelIndex >= 0) alarm.setLabel(cursor.getString(labelIndex));
+        if (enabledIndex >= 0) alarm.setEnabled(cursor.getInt(enabledIndex) == 1);
+        if (repeatMaskIndex >= 0) alarm.setRepeatDays((byte) cursor.getInt(repeatMaskIndex));
+        if (vibrateIndex >= 0) alarm.setVibrate(cursor.getInt(vibrateIndex) == 1);
+        if (ringtoneIndex >= 0) alarm.setRingtoneIndex(cursor.getInt(ringtoneIndex));
+        return alarm;
+    }
+    
+    // Every remaining row, presized from the cursor's count; does not close the cursor
+    List<Alarm> mapAll() {
+        List<Alarm> alarms = new ArrayList<>(Math.max(cursor.getCount(), 0));
+        while (cursor.moveToNext()) {
+            alarms.add(map());
+        }
+        return alarms;
+    }
+}
@@ -0,0 +1,37 @@
+package com.alarmv1;
+
+// Which AlarmManager registrations an alarm needs and when each one fires. Kept free of Android
+// types so the simulation module runs exactly these rules against a virtual clock.
+public final class AlarmSchedule {
+    static final int MAX_REGISTRATIONS = 7;
+    
+    private final NextAlarmCalculator calculator;
+    
+    public AlarmSchedule(NextAlarmCalculator calculator) {
+        this.calculator = calculator;
+    }
+    
+    // Fills requestCodes and triggerTimes with the registrations as of now and returns their count.
+    // A one-shot alarm has a single registration for its next occurrence. A repeating alarm has one
+    // per repeat day, each for that weekday's next occurrence; when one fires, planning again from
+    // the fire time moves just that registration a week ahead.
+    public int plan(int alarmId, int hour, int minute, int repeatMask, long now,
+                    int[] requestCodes, long[] triggerTimes) {
+        repeatMask &= 0x7F;
+        if (repeatMask == 0) {
+            requestCodes[0] = RequestCodes.forAlarm(alarmId);
+            triggerTimes[0] = calculator.nextAlarmTime(hour, minute, 0, now);
+            return 1;
+        }
+        
+        int count = 0;
+        for (int day = 0; day < 7; day++) {
+            if ((repeatMask & (1 << day)) != 0) {
+                requestCodes[count] = RequestCodes.forDay(alarmId, day);
+                triggerTimes[count] = calculator.nextAlarmTime(hour, minute, 1 << day, now);
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,304 @@
+package com.alarmv1;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Fire-path latency of every alarm, measured against the trigger time it was armed for (carried in
+// its AlarmPayload): broadcast delivered, notification posted, ringing screen created and first
+// sample audible. Records live in a fixed-size ring file, so a year of alarms costs 16 KB and
+// each stamp is a single positioned write on the telemetry thread.
+public class AlarmTelemetry {
+    private static final String TAG = "AlarmTelemetry";
+    private static final String FILE_NAME = "alarm_telemetry.bin";
+    private static final String EXPORT_NAME = "alarm_latency.csv";
+    private static final int MAGIC = 0x414C5431; // "ALT1"
+    private static final int HEADER_BYTES = 12; // Magic, next slot, record count
+    private static final int CAPACITY = 512;
+    
+    static final int STAGE_RECEIVED = 0;
+    static final int STAGE_NOTIFIED = 1;
+    static final int STAGE_ACTIVITY = 2;
+    static final int STAGE_AUDIBLE = 3;
+    private static final int STAGES = 4;
+    private static final String[] STAGE_NAMES = {"received", "notified", "activity", "audible"};
+    
+    // Record: scheduled time i64, alarm id i32, version code i32, then per stage the milliseconds
+    // after the scheduled time (negative if early) as i32
+    private static final int RECORD_BYTES = 8 + 4 + 4 + 4 * STAGES;
+    private static final int STAGES_OFFSET = 16;
+    static final int NOT_REACHED = Integer.MIN_VALUE;
+    
+    private static AlarmTelemetry instance;
+    
+    private final Context context;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    
+    // The firing being traced; a newer alarm replaces it, as in AlarmRingingService
+    private volatile Trace current;
+    
+    // Touched only on the executor
+    private FileChannel channel;
+    private int nextSlot;
+    private int count;
+    
+    private AlarmTelemetry(Context context) {
+        this.context = context.getApplicationContext();
+    }
+    
+    public static synchronized AlarmTelemetry getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmTelemetry(context);
+        }
+        return instance;
+    }
+    
+    // Starts a trace at AlarmReceiver entry; receivedAt is elapsedRealtime() taken there
+    public void onReceived(AlarmPayload payload, long receivedAt) {
+        long scheduled = payload.getFireTime();
+        if (scheduled == 0) {
+            current = null; // Legacy PendingIntent without a recorded trigger time
+            return;
+        }
+        long receivedWallTime = System.currentTimeMillis() - (SystemClock.elapsedRealtime() - receivedAt);
+        final Trace trace = new Trace(payload.getAlarmId(), receivedWallTime - scheduled, receivedAt);
+        current = trace;
+        
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        record.putLong(scheduled).putInt(trace.alarmId).putInt(BuildConfig.VERSION_CODE);
+        record.putInt(clamp(trace.receivedLateness));
+        for (int i = 1; i < STAGES; i++) {
+            record.putInt(NOT_REACHED);
+        }
+        record.flip();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    FileChannel out = open();
+                    long offset = HEADER_BYTES + (long) nextSlot * RECORD_BYTES;
+                    write(out, record, offset);
+                    nextSlot = (nextSlot + 1) % CAPACITY;
+                    count = Math.min(count + 1, CAPACITY);
+                    writeHeader(out);
+                    trace.offset = offset;
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not record alarm telemetry", e);
+                }
+            }
+        });
+    }
+    
+    // Stamps a stage of the current firing; ignored if alarmId's firing is no longer the current one
+    public void mark(int alarmId, final int stage) {
+        final Trace trace = current;
+        if (trace == null || alarmId != trace.alarmId) {
+            return;
+        }
+        final long lateness = trace.receivedLateness + (SystemClock.elapsedRealtime() - trace.receivedAt);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Runs after the trace's record was allocated; negative if that write failed
+                if (trace.offset < 0) return;
+                try {
+                    ByteBuffer value = ByteBuffer.allocate(4).putInt(clamp(lateness));
+                    value.flip();
+                    write(open(), value, trace.offset + STAGES_OFFSET + 4L * stage);
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not record alarm telemetry", e);
+                }
+                if (stage == STAGE_AUDIBLE) {
+                    Log.i(TAG, "Alarm " + trace.alarmId + " audible " + lateness + " ms after its trigger time");
+                }
+            }
+        });
+    }
+    
+    // p50/p95/p99 lateness per stage over the stored records; versionCode 0 covers every release
+    public Future<Summary> summarize(final int versionCode) {
+        return executor.submit(new Callable<Summary>() {
+            @Override
+            public Summary call() throws IOException {
+                return summarize(readRecords(), versionCode);
+            }
+        });
+    }
+    
+    // Writes every stored record plus the summary as CSV to app-specific external storage
+    // (adb pull /sdcard/Android/data/com.alarmv1/files/alarm_latency.csv) and returns the file.
+    // Debug builds trigger it through TelemetryDumpReceiver.
+    public Future<File> export() {
+        return executor.submit(new Callable<File>() {
+            @Override
+            public File call() throws IOException {
+                long[][] records = readRecords();
+                File exportDir = context.getExternalFilesDir(null);
+                File target = new File(exportDir != null ? exportDir : context.getFilesDir(), EXPORT_NAME);
+                PrintWriter out = new PrintWriter(new FileWriter(target));
+                try {
+                    out.println("# " + summarize(records, 0));
+                    out.print("scheduled,alarm_id,version_code");
+                    for (String name : STAGE_NAMES) {
+                        out.print("," + name + "_ms");
+                    }
+                    out.println();
+                    for (long[] record : records) {
+                        out.print(record[0] + "," + record[1] + "," + record[2]);
+                        for (int i = 0; i < STAGES; i++) {
+                            long value = record[3 + i];
+                            out.print("," + (value == NOT_REACHED ? "" : String.valueOf(value)));
+                        }
+                        out.println();
+                    }
+                } finally {
+                    out.close();
+                }
+                return target;
+            }
+        });
+    }
+    
+    private static Summary summarize(long[][] records, int versionCode) {
+        int[][] percentiles = new int[STAGES][];
+        int matching = 0;
+        for (long[] record : records) {
+            if (versionCode == 0 || record[2] == versionCode) matching++;
+        }
+        for (int stage = 0; stage < STAGES; stage++) {
+            int[] values = new int[matching];
+            int size = 0;
+            for (long[] record : records) {
+                if ((versionCode == 0 || record[2] == versionCode) && record[3 + stage] != NOT_REACHED) {
+                    values[size++] = (int) record[3 + stage];
+                }
+            }
+            Arrays.sort(values, 0, size);
+            percentiles[stage] = new int[]{
+                    percentile(values, size, 50), percentile(values, size, 95), percentile(values, size, 99)};
+        }
+        return new Summary(matching, percentiles);
+    }
+    
+    // Nearest rank; NOT_REACHED without samples
+    private static int percentile(int[] sorted, int size, int percent) {
+        if (size == 0) return NOT_REACHED;
+        int rank = (int) Math.ceil(percent / 100.0 * size);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+    
+    // Oldest first; each row is scheduled time, alarm id, version code, then the stages
+    private long[][] readRecords() throws IOException {
+        FileChannel in = open();
+        long[][] records = new long[count][];
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES);
+        int first = count < CAPACITY ? 0 : nextSlot;
+        for (int i = 0; i < count; i++) {
+            long offset = HEADER_BYTES + (long) ((first + i) % CAPACITY) * RECORD_BYTES;
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                if (in.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Truncated telemetry file");
+                }
+            }
+            buffer.flip();
+            long[] record = new long[3 + STAGES];
+            record[0] = buffer.getLong();
+            record[1] = buffer.getInt();
+            record[2] = buffer.getInt();
+            for (int stage = 0; stage < STAGES; stage++) {
+                record[3 + stage] = buffer.getInt();
+            }
+            records[i] = record;
+        }
+        return records;
+    }
+    
+    private FileChannel open() throws IOException {
+        if (channel != null) return channel;
+        RandomAccessFile raf = new RandomAccessFile(new File(context.getNoBackupFilesDir(), FILE_NAME), "rw");
+        if (raf.length() >= HEADER_BYTES && raf.readInt() == MAGIC) {
+            nextSlot = raf.readInt();
+            count = raf.readInt();
+            if (nextSlot < 0 || nextSlot >= CAPACITY || count < 0 || count > CAPACITY
+                    || raf.length() < HEADER_BYTES + (long) count * RECORD_BYTES) {
+                nextSlot = 0;
+                count = 0;
+            }
+        } else {
+            nextSlot = 0;
+            count = 0;
+        }
+        channel = raf.getChannel();
+        writeHeader(channel);
+        return channel;
+    }
+    
+    private void writeHeader(FileChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(nextSlot).putInt(count);
+        header.flip();
+        write(out, header, 0);
+    }
+    
+    private static void write(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+        }
+    }
+    
+    private static int clamp(long millis) {
+        return (int) Math.max(Integer.MIN_VALUE + 1, Math.min(Integer.MAX_VALUE, millis));
+    }
+    
+    private static final class Trace {
+        final int alarmId;
+        final long receivedLateness;
+        final long receivedAt;
+        long offset = -1; // Record position, set on the executor once allocated
+        
+        Trace(int alarmId, long receivedLateness, long receivedAt) {
+            this.alarmId = alarmId;
+            this.receivedLateness = receivedLateness;
+            this.receivedAt = receivedAt;
+        }
+    }
+    
+    static final class Summary {
+        final int records;
+        final int[][] percentiles; // [stage][p50, p95, p99] in ms after the trigger time
+        
+        Summary(int records, int[][] percentiles) {
+            this.records = records;
+            this.percentiles = percentiles;
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder().append(records).append(" alarms");
+            for (int stage = 0; stage < STAGES; stage++) {
+                int[] values = percentiles[stage];
+                text.append("; ").append(STAGE_NAMES[stage]);
+                if (values[0] == NOT_REACHED) {
+                    text.append(" n/a");
+                } else {
+                    text.append(" p50 ").append(values[0]).append(" p95 ").append(values[1])
+                            .append(" p99 ").append(values[2]).append(" ms");
+                }
+            }
+            return text.toString();
+        }
+    }
+}
@@ -5,6 +5,8 @@ import android.content.DialogInterface;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -22,26 +24,36 @@ import androidx.appcompat.widget.Toolbar;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.chip.Chip;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.switchmaterial.SwitchMaterial;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class MainActivity extends AppCompatActivity {
     private RecyclerView alarmRecyclerView;
     private AlarmAdapter alarmAdapter;
-    private List<Alarm> alarms;
-    private AlarmDatabase alarmDatabase;
+    private AlarmRepository alarmRepository;
     private TextView emptyView;
     private FloatingActionButton fabAddAlarm;
+    private boolean liveListShown;
+    private Boolean nextAlarmOnly; // Null until read off the main thread; the menu item waits for it
+    // The add/edit dialog's content, inflated once while idle and reused by every open
+    private View alarmDialogView;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        
+        // Both reads start before the layout inflates; their results are posted to the main
+        // thread, so they arrive after onCreate has set up the adapter
+        alarmRepository = AlarmRepository.getInstance(this);
+        loadSnapshot();
+        loadAlarms();
+        
         setContentView(R.layout.activity_main);
         
         Toolbar toolbar = findViewById(R.id.toolbar);
@@ -51,14 +63,13 @@ public class MainActivity extends AppCompatActivity {
         }
         
         AlarmManagerHelper.initialize(this);
-        alarmDatabase = new AlarmDatabase(this);
+        loadSchedulingMode();
         
         alarmRecyclerView = findViewById(R.id.alarm_recycler_view);
         emptyView = findViewById(R.id.empty_view);
         fabAddAlarm = findViewById(R.id.fab_add_alarm);
         
-        alarms = new ArrayList<>();
-        alarmAdapter = new AlarmAdapter(alarms);
+        alarmAdapter = new AlarmAdapter();
         alarmRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         alarmRecyclerView.setAdapter(alarmAdapter);
         
@@ -69,8 +80,25 @@ public class MainActivity extends AppCompatActivity {
             }
         });
         
-        requestPermissions();
-        loadAlarms();
+        // Nothing here is needed for the first frame
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                if (isDestroyed()) return false;
+                requestPermissions();
+                if (alarmDialogView == null) {
+                    alarmDialogView = inflateAlarmDialogView();
+                }
+                return false;
+            }
+        });
+    }
+    
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // The 12/24-hour setting can change while we're in the background
+        alarmAdapter.setTimeStrings(AlarmFormatter.getTimeTable(this));
     }
     
     private void requestPermissions() {
@@ -84,15 +112,74 @@ public class MainActivity extends AppCompatActivity {
         }
     }
     
+    // Paints the list as last saved while the database loads; ignored once live data is shown
+    private void loadSnapshot() {
+        alarmRepository.getSnapshotAsync(new AlarmRepository.Callback<List<Alarm>>() {
+            @Override
+            public void onResult(List<Alarm> result) {
+                if (isDestroyed() || result == null || liveListShown) return;
+                alarmAdapter.submitList(result, new Runnable() {
+                    @Override
+                    public void run() {
+                        updateEmptyView();
+                    }
+                });
+            }
+        });
+    }
+    
     private void loadAlarms() {
-        alarms.clear();
-        alarms.addAll(alarmDatabase.getAllAlarms());
-        alarmAdapter.notifyDataSetChanged();
-        updateEmptyView();
+        alarmRepository.getAlarmsAsync(new AlarmRepository.Callback<List<Alarm>>() {
+            @Override
+            public void onResult(List<Alarm> result) {
+                if (isDestroyed()) return;
+                liveListShown = true;
+                alarmAdapter.submitList(result, new Runnable() {
+                    @Override
+                    public void run() {
+                        updateEmptyView();
+                    }
+                });
+            }
+        });
+    }
+    
+    private void loadSchedulingMode() {
+        // The first call reads the mode from prefs, which StrictMode rejects on this thread
+        alarmRepository.executeWrite(new Runnable() {
+            @Override
+            public void run() {
+                nextAlarmOnly = AlarmManagerHelper.isNextAlarmOnly();
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                if (!isDestroyed()) invalidateOptionsMenu();
+            }
+        });
+    }
+    
+    private void setNextAlarmOnly(final boolean enabled) {
+        alarmRepository.executeWrite(new Runnable() {
+            @Override
+            public void run() {
+                // Persists the mode and moves every registration over to it
+                AlarmManagerHelper.setNextAlarmOnly(enabled);
+                nextAlarmOnly = enabled;
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                if (isDestroyed()) return;
+                invalidateOptionsMenu();
+                Toast.makeText(MainActivity.this, enabled ? "Arming the next alarm only" : "Arming every alarm",
+                        Toast.LENGTH_SHORT).show();
+            }
+        });
     }
     
     private void updateEmptyView() {
-        if (alarms.isEmpty()) {
+        if (alarmAdapter.getCurrentList().isEmpty()) {
             emptyView.setVisibility(View.VISIBLE);
             alarmRecyclerView.setVisibility(View.GONE);
         } else {
@@ -103,7 +190,7 @@ public class MainActivity extends AppCompatActivity {
     
     private void showAddAlarmDialog(final Alarm alarmToEdit) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
-        View dialogView = LayoutInflater.from(this).inflate(R.layout.dialog_add_alarm, null);
+        View dialogView = obtainAlarmDialogView();
         builder.setView(dialogView);
         
         final TimePicker timePicker = dialogView.findViewById(R.id.time_picker);
@@ -153,9 +240,8 @@ public class MainActivity extends AppCompatActivity {
                 timePicker.setCurrentMinute(alarmToEdit.getMinute());
             }
             labelInput.setText(alarmToEdit.getLabel());
-            boolean[] repeatDays = alarmToEdit.getRepeatDays();
             for (int i = 0; i < 7; i++) {
-                chips[i].setChecked(repeatDays[i]);
+                chips[i].setChecked(alarmToEdit.isRepeatDay(i));
             }
             btnDelete.setVisibility(View.VISIBLE);
         } else {
@@ -163,6 +249,12 @@ public class MainActivity extends AppCompatActivity {
                 timePicker.setHour(java.util.Calendar.getInstance().get(java.util.Calendar.HOUR_OF_DAY));
                 timePicker.setMinute(java.util.Calendar.getInstance().get(java.util.Calendar.MINUTE));
             }
+            // The view is reused, so clear whatever the previous open left behind
+            labelInput.setText("");
+            for (Chip chip : chips) {
+                chip.setChecked(false);
+            }
+            btnDelete.setVisibility(View.GONE);
         }
         
         final AlertDialog dialog = builder.create();
@@ -197,14 +289,16 @@ public class MainActivity extends AppCompatActivity {
                 }
                 
                 String label = labelInput.getText().toString();
-                boolean[] repeatDays = new boolean[7];
+                byte repeatDays = 0;
                 for (int i = 0; i < 7; i++) {
-                    repeatDays[i] = chips[i].isChecked();
+                    if (chips[i].isChecked()) {
+                        repeatDays |= 1 << i;
+                    }
                 }
                 
                 Alarm alarm;
                 if (alarmToEdit != null) {
-                    alarm = alarmToEdit;
+                    alarm = new Alarm(alarmToEdit); // List items are immutable snapshots for diffing
                     alarm.setHour(hour);
                     alarm.setMinute(minute);
                     alarm.setLabel(label);
@@ -228,35 +322,99 @@ public class MainActivity extends AppCompatActivity {
         dialog.show();
     }
     
-    private void addAlarm(Alarm alarm) {
-        alarmDatabase.addAlarm(alarm);
-        AlarmManagerHelper.setAlarm(alarm);
-        loadAlarms();
-        Toast.makeText(this, "Alarm added", Toast.LENGTH_SHORT).show();
+    private View inflateAlarmDialogView() {
+        return LayoutInflater.from(this).inflate(R.layout.dialog_add_alarm, null);
     }
     
-    private void updateAlarm(Alarm alarm) {
-        AlarmManagerHelper.cancelAlarm(alarm);
-        alarmDatabase.updateAlarm(alarm);
-        if (alarm.isEnabled()) {
-            AlarmManagerHelper.setAlarm(alarm);
+    // Takes the reusable dialog content back from the dialog that last showed it
+    private View obtainAlarmDialogView() {
+        if (alarmDialogView == null) {
+            alarmDialogView = inflateAlarmDialogView();
         }
-        loadAlarms();
-        Toast.makeText(this, "Alarm updated", Toast.LENGTH_SHORT).show();
+        ViewGroup parent = (ViewGroup) alarmDialogView.getParent();
+        if (parent != null) {
+            parent.removeView(alarmDialogView);
+        }
+        return alarmDialogView;
     }
     
-    private void deleteAlarm(Alarm alarm) {
-        AlarmManagerHelper.cancelAlarm(alarm);
-        alarmDatabase.deleteAlarm(alarm.getId());
+    // Database and AlarmManager work runs on the repository's writer thread; the UI refreshes after
+    private void addAlarm(final Alarm alarm) {
+        alarmRepository.executeWrite(new Runnable() {
+            @Override
+            public void run() {
+                alarmRepository.addAlarm(alarm);
+                AlarmManagerHelper.setAlarm(alarm);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                onAlarmsChanged("Alarm added");
+            }
+        });
+    }
+    
+    private void updateAlarm(final Alarm alarm) {
+        alarmRepository.executeWrite(new Runnable() {
+            @Override
+            public void run() {
+                // Written first so next-alarm-only mode plans from the edited list; re-arming
+                // cancels whatever was recorded for the alarm but is no longer planned
+                alarmRepository.updateAlarm(alarm);
+                if (alarm.isEnabled()) {
+                    AlarmManagerHelper.setAlarm(alarm);
+                } else {
+                    AlarmManagerHelper.cancelAlarm(alarm);
+                }
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                onAlarmsChanged("Alarm updated");
+            }
+        });
+    }
+    
+    private void deleteAlarm(final Alarm alarm) {
+        alarmRepository.executeWrite(new Runnable() {
+            @Override
+            public void run() {
+                alarmRepository.deleteAlarm(alarm.getId());
+                AlarmManagerHelper.cancelAlarm(alarm);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                onAlarmsChanged("Alarm deleted");
+            }
+        });
+    }
+    
+    private void onAlarmsChanged(String message) {
+        if (isDestroyed()) return;
         loadAlarms();
-        Toast.makeText(this, "Alarm deleted", Toast.LENGTH_SHORT).show();
+        Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
     }
     
-    private class AlarmAdapter extends RecyclerView.Adapter<AlarmAdapter.AlarmViewHolder> {
-        private List<Alarm> alarmList;
+    // Lists are diffed off the main thread; a toggle only rebinds the switch of the row that changed
+    private class AlarmAdapter extends ListAdapter<Alarm, AlarmAdapter.AlarmViewHolder> {
+        private String[] timeStrings;
         
-        public AlarmAdapter(List<Alarm> alarmList) {
-            this.alarmList = alarmList;
+        public AlarmAdapter() {
+            super(new AlarmDiffCallback());
+            setHasStableIds(true);
+        }
+        
+        public void setTimeStrings(String[] timeStrings) {
+            if (timeStrings != this.timeStrings) {
+                this.timeStrings = timeStrings;
+                notifyDataSetChanged();
+            }
+        }
+        
+        @Override
+        public long getItemId(int position) {
+            return getItem(position).getId();
         }
         
         @NonNull
@@ -269,13 +427,16 @@ public class MainActivity extends AppCompatActivity {
         
         @Override
         public void onBindViewHolder(@NonNull AlarmViewHolder holder, int position) {
-            Alarm alarm = alarmList.get(position);
-            holder.bind(alarm);
+            holder.bind(getItem(position));
         }
         
         @Override
-        public int getItemCount() {
-            return alarmList.size();
+        public void onBindViewHolder(@NonNull AlarmViewHolder holder, int position, @NonNull List<Object> payloads) {
+            if (payloads.isEmpty()) {
+                onBindViewHolder(holder, position);
+            } else {
+                holder.bindEnabled(getItem(position));
+            }
         }
         
         class AlarmViewHolder extends RecyclerView.ViewHolder {
@@ -283,6 +444,7 @@ public class MainActivity extends AppCompatActivity {
             private TextView alarmLabel;
             private TextView alarmRepeat;
             private SwitchMaterial alarmSwitch;
+            private final CompoundButton.OnCheckedChangeListener switchListener;
             
             public AlarmViewHolder(@NonNull View itemView) {
                 super(itemView);
@@ -290,10 +452,47 @@ public class MainActivity extends AppCompatActivity {
                 alarmLabel = itemView.findViewById(R.id.alarm_label);
                 alarmRepeat = itemView.findViewById(R.id.alarm_repeat);
                 alarmSwitch = itemView.findViewById(R.id.alarm_switch);
+                
+                // Listeners are created once per holder and look up the row's current item
+                switchListener = new CompoundButton.OnCheckedChangeListener() {
+                    @Override
+                    public void onCheckedChanged(CompoundButton buttonView, final boolean isChecked) {
+                        int position = getBindingAdapterPosition();
+                        if (position == RecyclerView.NO_POSITION) return;
+                        final Alarm alarm = new Alarm(getItem(position));
+                        alarm.setEnabled(isChecked);
+                        alarmRepository.executeWrite(new Runnable() {
+                            @Override
+                            public void run() {
+                                alarmRepository.setAlarmEnabled(alarm.getId(), isChecked);
+                                if (isChecked) {
+                                    AlarmManagerHelper.setAlarm(alarm);
+                                } else {
+                                    AlarmManagerHelper.cancelAlarm(alarm);
+                                }
+                            }
+                        }, new Runnable() {
+                            @Override
+                            public void run() {
+                                loadAlarms();
+                            }
+                        });
+                    }
+                };
+                
+                itemView.setOnClickListener(new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        int position = getBindingAdapterPosition();
+                        if (position != RecyclerView.NO_POSITION) {
+                            showAddAlarmDialog(getItem(position));
+                        }
+                    }
+                });
             }
             
-            public void bind(final Alarm alarm) {
-                alarmTime.setText(alarm.getTimeString());
+            public void bind(Alarm alarm) {
+                alarmTime.setText(timeStrings[alarm.getHour() * 60 + alarm.getMinute()]);
                 
                 if (alarm.getLabel() != null && !alarm.getLabel().isEmpty()) {
                     alarmLabel.setText(alarm.getLabel());
@@ -311,38 +510,38 @@ public class MainActivity extends AppCompatActivity {
                     alarmRepeat.setVisibility(View.VISIBLE);
                 }
                 
+                bindEnabled(alarm);
+            }
+            
+            public void bindEnabled(Alarm alarm) {
+                // Detach first so setChecked doesn't report a user toggle
+                alarmSwitch.setOnCheckedChangeListener(null);
                 alarmSwitch.setChecked(alarm.isEnabled());
-                
-                alarmSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
-                    @Override
-                    public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
-                        alarm.setEnabled(isChecked);
-                        if (isChecked) {
-                            AlarmManagerHelper.setAlarm(alarm);
-                        } else {
-                            AlarmManagerHelper.cancelAlarm(alarm);
-                        }
-                        alarmDatabase.updateAlarm(alarm);
-                    }
-                });
-                
-                itemView.setOnClickListener(new View.OnClickListener() {
-                    @Override
-                    public void onClick(View v) {
-                        showAddAlarmDialog(alarm);
-                    }
-                });
+                alarmSwitch.setOnCheckedChangeListener(switchListener);
             }
         }
     }
     
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main, menu);
+        return true;
+    }
+    
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        MenuItem item = menu.findItem(R.id.action_next_alarm_only);
+        item.setVisible(nextAlarmOnly != null);
+        item.setChecked(nextAlarmOnly != null && nextAlarmOnly);
         return true;
     }
     
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_next_alarm_only) {
+            setNextAlarmOnly(!item.isChecked());
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
     
@@ -361,6 +560,13 @@ public class MainActivity extends AppCompatActivity {
         final AlertDialog dialog = builder.create();
         adapter.setDialog(dialog);
         adapter.setSelectedIndexArray(selectedIndex);
+        dialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
+            @Override
+            public void onDismiss(DialogInterface dialogInterface) {
+                ringtoneManager.releasePreview();
+            }
+        });
+        ringtoneManager.preloadPreviews(Math.max(selectedIndex[0], 0), 2);
         dialog.show();
     }
     
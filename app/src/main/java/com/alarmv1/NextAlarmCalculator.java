@@ -0,0 +1,130 @@
+package com.alarmv1;
+
+import java.util.TimeZone;
+
+public class NextAlarmCalculator {
+    private static final long MINUTE_MILLIS = 60 * 1000L;
+    private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+    
+    // Real-world offsets stay within -12:00..+14:00, so a local day always lies inside
+    // [midnight - 14h, next midnight + 12h] in UTC
+    private static final long MAX_OFFSET_MILLIS = 14 * HOUR_MILLIS;
+    private static final long MIN_OFFSET_MILLIS = -12 * HOUR_MILLIS;
+    
+    private static final int TABLE_DAYS = 400;
+    private static final long NO_TRANSITION = Long.MAX_VALUE;
+    
+    private static NextAlarmCalculator instance;
+    
+    private final TimeSource timeSource;
+    private TimeZone zone;
+    private int rawOffset;
+    
+    // Offset table indexed by local epoch day - firstDay. A day holds at most one transition:
+    // offsetsBefore applies before transitions[i] (UTC millis), offsetsAfter from it on.
+    private long firstDay = Long.MIN_VALUE;
+    private final long[] transitions = new long[TABLE_DAYS];
+    private final int[] offsetsBefore = new int[TABLE_DAYS];
+    private final int[] offsetsAfter = new int[TABLE_DAYS];
+    
+    public NextAlarmCalculator(TimeSource timeSource, TimeZone zone) {
+        this.timeSource = timeSource;
+        setTimeZone(zone);
+    }
+    
+    public static synchronized NextAlarmCalculator getDefault() {
+        if (instance == null) {
+            instance = new NextAlarmCalculator(TimeSource.SYSTEM, TimeZone.getDefault());
+        }
+        return instance;
+    }
+    
+    public synchronized void setTimeZone(TimeZone zone) {
+        this.zone = zone;
+        this.rawOffset = zone.getRawOffset();
+        this.firstDay = Long.MIN_VALUE; // Rebuilt on next lookup
+    }
+    
+    public long nextAlarmTime(int hour, int minute, int repeatMask) {
+        return nextAlarmTime(hour, minute, repeatMask, timeSource.currentTimeMillis());
+    }
+    
+    // repeatMask: bit 0 = Sunday ... bit 6 = Saturday, 0 = one-shot.
+    // Returns the first occurrence strictly after now. Wall times inside a DST gap are
+    // shifted forward by the gap length; wall times inside an overlap use the earlier instant.
+    public synchronized long nextAlarmTime(int hour, int minute, int repeatMask, long now) {
+        long probeDay = Math.floorDiv(now + rawOffset, DAY_MILLIS);
+        ensureTable(probeDay);
+        
+        int probe = (int) (probeDay - firstDay);
+        long localNow = now + (now < transitions[probe] ? offsetsBefore[probe] : offsetsAfter[probe]);
+        long today = Math.floorDiv(localNow, DAY_MILLIS);
+        long wallTime = hour * HOUR_MILLIS + minute * MINUTE_MILLIS;
+        repeatMask &= 0x7F;
+        
+        // Today plus the following 7 days always contains a match for a non-empty mask
+        for (int i = 0; i <= 7; i++) {
+            long day = today + i;
+            if (repeatMask != 0 && (repeatMask & (1 << dayOfWeek(day))) == 0) {
+                continue;
+            }
+            long time = toUtc(day, wallTime);
+            if (time > now) {
+                return time;
+            }
+        }
+        return toUtc(today + 1, wallTime);
+    }
+    
+    // Epoch day 0 (1970-01-01) was a Thursday; Sunday = 0
+    static int dayOfWeek(long epochDay) {
+        return (int) Math.floorMod(epochDay + 4, 7L);
+    }
+    
+    private long toUtc(long day, long wallTime) {
+        int index = (int) (day - firstDay);
+        long local = day * DAY_MILLIS + wallTime;
+        long transition = transitions[index];
+        int before = offsetsBefore[index];
+        if (transition == NO_TRANSITION) {
+            return local - before;
+        }
+        int after = offsetsAfter[index];
+        return local < transition + Math.max(before, after) ? local - before : local - after;
+    }
+    
+    private void ensureTable(long probeDay) {
+        // Lookups touch probeDay - 1 (local date behind the raw offset) up to probeDay + 8
+        if (firstDay == Long.MIN_VALUE || probeDay - 1 < firstDay || probeDay + 8 >= firstDay + TABLE_DAYS) {
+            rebuildTable(probeDay - 2);
+        }
+    }
+    
+    private void rebuildTable(long startDay) {
+        firstDay = startDay;
+        for (int i = 0; i < TABLE_DAYS; i++) {
+            long day = startDay + i;
+            long low = day * DAY_MILLIS - MAX_OFFSET_MILLIS;
+            long high = (day + 1) * DAY_MILLIS - MIN_OFFSET_MILLIS;
+            int before = zone.getOffset(low);
+            int after = zone.getOffset(high);
+            offsetsBefore[i] = before;
+            offsetsAfter[i] = after;
+            if (before == after) {
+                transitions[i] = NO_TRANSITION;
+                continue;
+            }
+            // Binary search the first millisecond using the new offset
+            while (high - low > 1) {
+                long mid = low + (high - low) / 2;
+                if (zone.getOffset(mid) == before) {
+                    low = mid;
+                } else {
+                    high = mid;
+                }
+            }
+            transitions[i] = high;
+        }
+    }
+}
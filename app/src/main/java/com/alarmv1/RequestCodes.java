@@ -0,0 +1,46 @@
+package com.alarmv1;
+
+// PendingIntent request codes derived from the alarm id: the low bits name the registration
+// slot and the rest is the id, so two alarms can never share a code. Ids come from the alarms
+// table's AUTOINCREMENT sequence, start at 1 and are never reused.
+final class RequestCodes {
+    private static final int SLOT_BITS = 4;
+    
+    static final int SLOT_NEXT = 0; // The alarm's next occurrence
+    private static final int SLOT_FIRST_DAY = 1; // Slots 1..7: weekly registration for Sunday..Saturday
+    static final int SLOT_SNOOZE = 8;
+    
+    // Keeps every code positive; code 0 (below any alarm's codes) is left for the next-alarm mode
+    static final int MAX_ALARM_ID = Integer.MAX_VALUE >> SLOT_BITS;
+    
+    private RequestCodes() {
+    }
+    
+    static int forAlarm(int alarmId) {
+        return code(alarmId, SLOT_NEXT);
+    }
+    
+    static int forDay(int alarmId, int day) {
+        return code(alarmId, SLOT_FIRST_DAY + day);
+    }
+    
+    static int forSnooze(int alarmId) {
+        return code(alarmId, SLOT_SNOOZE);
+    }
+    
+    static int alarmIdOf(int requestCode) {
+        return requestCode >>> SLOT_BITS;
+    }
+    
+    // Validates a freshly allocated row id before it is used as an alarm id
+    static int checkAlarmId(long rowId) {
+        if (rowId < 1 || rowId > MAX_ALARM_ID) {
+            throw new IllegalStateException("Alarm id out of range: " + rowId);
+        }
+        return (int) rowId;
+    }
+    
+    private static int code(int alarmId, int slot) {
+        return (alarmId << SLOT_BITS) | slot;
+    }
+}
@@ -0,0 +1,56 @@
+package com.alarmv1;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Immutable list of bundled ringtones, built once per process. The ten shipped tones are
+// referenced directly; any further res/raw/ringtone_N files are discovered by name at runtime.
+class RingtoneCatalog {
+    private static final int[] BUNDLED_RESOURCES = {
+        R.raw.ringtone_1,
+        R.raw.ringtone_2,
+        R.raw.ringtone_3,
+        R.raw.ringtone_4,
+        R.raw.ringtone_5,
+        R.raw.ringtone_6,
+        R.raw.ringtone_7,
+        R.raw.ringtone_8,
+        R.raw.ringtone_9,
+        R.raw.ringtone_10
+    };
+    
+    private final List<RingtoneManager.RingtoneInfo> ringtones;
+    
+    RingtoneCatalog(Context context) {
+        Resources resources = context.getResources();
+        String packageName = context.getPackageName();
+        String[] names = resources.getStringArray(R.array.ringtone_names);
+        
+        List<RingtoneManager.RingtoneInfo> list = new ArrayList<>(BUNDLED_RESOURCES.length);
+        for (int i = 0; ; i++) {
+            int resourceId = i < BUNDLED_RESOURCES.length
+                    ? BUNDLED_RESOURCES[i]
+                    : resources.getIdentifier("ringtone_" + (i + 1), "raw", packageName);
+            if (resourceId == 0) break;
+            
+            String name = i < names.length ? names[i] : "Ringtone " + (i + 1);
+            Uri uri = Uri.parse("android.resource://" + packageName + "/" + resourceId);
+            list.add(new RingtoneManager.RingtoneInfo(i, name, resourceId, uri));
+        }
+        ringtones = Collections.unmodifiableList(list);
+    }
+    
+    List<RingtoneManager.RingtoneInfo> getRingtones() {
+        return ringtones;
+    }
+    
+    // Null for indexes outside the catalog, e.g. an alarm saved with a tone that was since removed
+    RingtoneManager.RingtoneInfo get(int index) {
+        return index >= 0 && index < ringtones.size() ? ringtones.get(index) : null;
+    }
+}
@@ -1,23 +1,22 @@
 package com.alarmv1;
 
 import android.content.Context;
-import android.media.MediaPlayer;
 import android.net.Uri;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class RingtoneManager {
-    private static final int RINGTONE_COUNT = 10;
     private static RingtoneManager instance;
     private Context context;
-    private MediaPlayer previewPlayer;
+    private final RingtoneCatalog catalog;
+    private RingtonePreviewEngine previewEngine; // Created on first preview, main thread only
     
     private RingtoneManager(Context context) {
         this.context = context.getApplicationContext();
+        this.catalog = new RingtoneCatalog(this.context);
     }
     
-    public static RingtoneManager getInstance(Context context) {
+    public static synchronized RingtoneManager getInstance(Context context) {
         if (instance == null) {
             instance = new RingtoneManager(context);
         }
@@ -25,134 +24,76 @@ public class RingtoneManager {
     }
     
     public static List<RingtoneInfo> getAvailableRingtones(Context context) {
-        List<RingtoneInfo> ringtones = new ArrayList<>();
-        
-        // 10 ringtones stored in res/raw folder
-        String[] ringtoneNames = context.getResources().getStringArray(R.array.ringtone_names);
-        int[] ringtoneResources = {
-            R.raw.ringtone_1,
-            R.raw.ringtone_2,
-            R.raw.ringtone_3,
-            R.raw.ringtone_4,
-            R.raw.ringtone_5,
-            R.raw.ringtone_6,
-            R.raw.ringtone_7,
-            R.raw.ringtone_8,
-            R.raw.ringtone_9,
-            R.raw.ringtone_10
-        };
-        
-        for (int i = 0; i < RINGTONE_COUNT && i < ringtoneResources.length; i++) {
-            String name = i < ringtoneNames.length ? ringtoneNames[i] : "Ringtone " + (i + 1);
-            ringtones.add(new RingtoneInfo(i, name, ringtoneResources[i]));
-        }
-        
-        return ringtones;
+        return getInstance(context).catalog.getRingtones();
     }
     
     public Uri getRingtoneUri(int ringtoneIndex) {
-        if (ringtoneIndex < 0 || ringtoneIndex >= RINGTONE_COUNT) {
-            return null;
-        }
-        
-        int[] ringtoneResources = {
-            R.raw.ringtone_1,
-            R.raw.ringtone_2,
-            R.raw.ringtone_3,
-            R.raw.ringtone_4,
-            R.raw.ringtone_5,
-            R.raw.ringtone_6,
-            R.raw.ringtone_7,
-            R.raw.ringtone_8,
-            R.raw.ringtone_9,
-            R.raw.ringtone_10
-        };
-        
-        if (ringtoneIndex < ringtoneResources.length) {
-            return Uri.parse("android.resource://" + context.getPackageName() + "/" + ringtoneResources[ringtoneIndex]);
-        }
-        
-        return null;
+        RingtoneInfo ringtone = catalog.get(ringtoneIndex);
+        return ringtone != null ? ringtone.getUri() : null;
     }
     
     public int getRingtoneResource(int ringtoneIndex) {
-        if (ringtoneIndex < 0 || ringtoneIndex >= RINGTONE_COUNT) {
-            return -1;
-        }
-        
-        int[] ringtoneResources = {
-            R.raw.ringtone_1,
-            R.raw.ringtone_2,
-            R.raw.ringtone_3,
-            R.raw.ringtone_4,
-            R.raw.ringtone_5,
-            R.raw.ringtone_6,
-            R.raw.ringtone_7,
-            R.raw.ringtone_8,
-            R.raw.ringtone_9,
-            R.raw.ringtone_10
-        };
-        
-        if (ringtoneIndex < ringtoneResources.length) {
-            return ringtoneResources[ringtoneIndex];
-        }
-        
-        return -1;
+        RingtoneInfo ringtone = catalog.get(ringtoneIndex);
+        return ringtone != null ? ringtone.getResourceId() : -1;
     }
     
     public String getRingtoneName(int ringtoneIndex) {
-        if (ringtoneIndex < 0 || ringtoneIndex >= RINGTONE_COUNT) {
-            return "Default";
-        }
-        
-        String[] ringtoneNames = context.getResources().getStringArray(R.array.ringtone_names);
-        if (ringtoneIndex < ringtoneNames.length) {
-            return ringtoneNames[ringtoneIndex];
-        }
-        
-        return "Ringtone " + (ringtoneIndex + 1);
+        RingtoneInfo ringtone = catalog.get(ringtoneIndex);
+        return ringtone != null ? ringtone.getName() : "Default";
     }
     
     public void previewRingtone(int ringtoneIndex) {
-        stopPreview();
-        
-        int resourceId = getRingtoneResource(ringtoneIndex);
-        if (resourceId == -1) {
+        RingtoneInfo ringtone = catalog.get(ringtoneIndex);
+        if (ringtone == null) {
+            stopPreview();
             return;
         }
-        
-        try {
-            previewPlayer = MediaPlayer.create(context, resourceId);
-            if (previewPlayer != null) {
-                previewPlayer.setLooping(false);
-                previewPlayer.start();
+        getPreviewEngine().play(ringtoneIndex, ringtone.getResourceId());
+    }
+    
+    // Warms the preview pool with the given tone and the ones after it
+    public void preloadPreviews(int firstIndex, int count) {
+        RingtonePreviewEngine engine = getPreviewEngine();
+        for (int i = firstIndex; i < firstIndex + count; i++) {
+            RingtoneInfo ringtone = catalog.get(i);
+            if (ringtone != null) {
+                engine.preload(i, ringtone.getResourceId());
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
     }
     
     public void stopPreview() {
-        if (previewPlayer != null) {
-            try {
-                previewPlayer.stop();
-                previewPlayer.release();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-            previewPlayer = null;
+        if (previewEngine != null) {
+            previewEngine.stop();
+        }
+    }
+    
+    // Frees the preview samples and decoder; call when the ringtone picker goes away
+    public void releasePreview() {
+        if (previewEngine != null) {
+            previewEngine.release();
+            previewEngine = null;
+        }
+    }
+    
+    private RingtonePreviewEngine getPreviewEngine() {
+        if (previewEngine == null) {
+            previewEngine = new RingtonePreviewEngine(context);
         }
+        return previewEngine;
     }
     
     public static class RingtoneInfo {
-        private int index;
-        private String name;
-        private int resourceId;
+        private final int index;
+        private final String name;
+        private final int resourceId;
+        private final Uri uri;
         
-        public RingtoneInfo(int index, String name, int resourceId) {
+        public RingtoneInfo(int index, String name, int resourceId, Uri uri) {
             this.index = index;
             this.name = name;
             this.resourceId = resourceId;
+            this.uri = uri;
         }
         
         public int getIndex() {
@@ -166,6 +107,9 @@ public class RingtoneManager {
         public int getResourceId() {
             return resourceId;
         }
+        
+        public Uri getUri() {
+            return uri;
+        }
     }
 }
-
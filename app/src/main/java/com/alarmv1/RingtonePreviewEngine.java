@@ -0,0 +1,186 @@
+package com.alarmv1;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.SoundPool;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import java.util.HashSet;
+import java.util.Set;
+
+// Ringtone previews from a small SoundPool. Decoded samples stay loaded in an LRU of POOL_SIZE
+// entries, so flipping between recently heard tones reuses them instead of re-opening a decoder,
+// and switching crossfades the old stream out under the new one. Main thread only.
+//
+// SoundPool keeps at most about 1 MB of decoded PCM per sample (roughly 6 s of 44.1 kHz stereo)
+// and drops the rest, so a preview is the tone's opening PREVIEW_MS, looped if shorter, then
+// faded out. That stays inside the truncation limit for any tone up to 48 kHz stereo.
+class RingtonePreviewEngine {
+    private static final int POOL_SIZE = 4;
+    private static final int CROSSFADE_MS = 150;
+    private static final int FADE_STEP_MS = 15;
+    private static final int PREVIEW_MS = 5000;
+    
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final SoundPool soundPool;
+    private final LruCache<Integer, Integer> samples; // Ringtone index -> SoundPool sample id
+    // Evicted from the LRU while still sounding; unloaded once their stream stops
+    private final Set<Integer> evictedInUse = new HashSet<>();
+    // Sample ids SoundPool has finished decoding; play() on one still loading returns no stream
+    private final Set<Integer> loadedSamples = new HashSet<>();
+    
+    private int pendingIndex = -1; // Requested before its sample finished loading
+    private int currentStream;
+    private int currentSample;
+    private int fadingStream;
+    private int fadingSample;
+    private long fadeStartedAt;
+    
+    RingtonePreviewEngine(Context context) {
+        this.context = context.getApplicationContext();
+        // Two streams: the one fading out and the one fading in
+        soundPool = new SoundPool.Builder()
+                .setMaxStreams(2)
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                        .build())
+                .build();
+        samples = new LruCache<Integer, Integer>(POOL_SIZE) {
+            @Override
+            protected void entryRemoved(boolean evicted, Integer index, Integer oldSample, Integer newSample) {
+                if (oldSample == currentSample || oldSample == fadingSample) {
+                    evictedInUse.add(oldSample);
+                } else {
+                    unload(oldSample);
+                }
+            }
+        };
+        soundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+            @Override
+            public void onLoadComplete(SoundPool pool, int sampleId, int status) {
+                if (status != 0) return;
+                loadedSamples.add(sampleId);
+                if (pendingIndex < 0) return;
+                Integer pendingSample = samples.get(pendingIndex);
+                if (pendingSample != null && pendingSample == sampleId) {
+                    pendingIndex = -1;
+                    startStream(sampleId);
+                }
+            }
+        });
+    }
+    
+    // Starts decoding ahead of the first tap, e.g. for the tones visible when the dialog opens
+    void preload(int ringtoneIndex, int resourceId) {
+        if (samples.get(ringtoneIndex) == null) {
+            samples.put(ringtoneIndex, soundPool.load(context, resourceId, 1));
+        }
+    }
+    
+    void play(int ringtoneIndex, int resourceId) {
+        Integer sample = samples.get(ringtoneIndex);
+        if (sample == null || !loadedSamples.contains(sample)) {
+            // Loads asynchronously (or preload() already started it); onLoadComplete starts it if
+            // nothing else was tapped meanwhile
+            if (sample == null) {
+                samples.put(ringtoneIndex, soundPool.load(context, resourceId, 1));
+            }
+            pendingIndex = ringtoneIndex;
+            fadeOutCurrent();
+            return;
+        }
+        pendingIndex = -1;
+        startStream(sample);
+    }
+    
+    void stop() {
+        pendingIndex = -1;
+        fadeOutCurrent();
+    }
+    
+    void release() {
+        handler.removeCallbacks(fadeStep);
+        handler.removeCallbacks(previewTimeout);
+        samples.evictAll();
+        soundPool.release(); // Also frees samples held back by evictedInUse
+        evictedInUse.clear();
+        loadedSamples.clear();
+        currentStream = 0;
+        currentSample = 0;
+        fadingStream = 0;
+        fadingSample = 0;
+        pendingIndex = -1;
+    }
+    
+    private void startStream(int sample) {
+        fadeOutCurrent();
+        currentStream = soundPool.play(sample, 0f, 0f, 1, -1, 1f);
+        currentSample = sample;
+        startFade();
+        handler.postDelayed(previewTimeout, PREVIEW_MS);
+    }
+    
+    private final Runnable previewTimeout = new Runnable() {
+        @Override
+        public void run() {
+            fadeOutCurrent();
+        }
+    };
+    
+    private void fadeOutCurrent() {
+        handler.removeCallbacks(previewTimeout);
+        if (fadingStream != 0) {
+            stopFading(); // A third tap mid-fade: drop the oldest stream outright
+        }
+        fadingStream = currentStream;
+        fadingSample = currentSample;
+        currentStream = 0;
+        currentSample = 0;
+        startFade();
+    }
+    
+    private void stopFading() {
+        soundPool.stop(fadingStream);
+        if (evictedInUse.remove(fadingSample)) {
+            unload(fadingSample);
+        }
+        fadingStream = 0;
+        fadingSample = 0;
+    }
+    
+    private void unload(int sample) {
+        soundPool.unload(sample);
+        loadedSamples.remove(sample);
+    }
+    
+    private void startFade() {
+        fadeStartedAt = SystemClock.uptimeMillis();
+        handler.removeCallbacks(fadeStep);
+        handler.post(fadeStep);
+    }
+    
+    private final Runnable fadeStep = new Runnable() {
+        @Override
+        public void run() {
+            float progress = Math.min(1f, (SystemClock.uptimeMillis() - fadeStartedAt) / (float) CROSSFADE_MS);
+            if (currentStream != 0) {
+                soundPool.setVolume(currentStream, progress, progress);
+            }
+            if (fadingStream != 0) {
+                float volume = 1f - progress;
+                soundPool.setVolume(fadingStream, volume, volume);
+                if (progress >= 1f) {
+                    stopFading();
+                }
+            }
+            if (progress < 1f) {
+                handler.postDelayed(this, FADE_STEP_MS);
+            }
+        }
+    };
+}
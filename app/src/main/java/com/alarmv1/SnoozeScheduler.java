@@ -0,0 +1,139 @@
+package com.alarmv1;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.util.Base64;
+
+import java.util.List;
+import java.util.Map;
+
+// Snoozes are armed separately from the alarm's own schedule: their PendingIntents use the
+// snooze request-code slot, so they never collide with (or overwrite) the alarm's registrations, and the
+// stored alarm is left untouched. Pending snoozes are kept in preferences as payloads, so they
+// can be re-armed after a reboot and fire without reading the alarm table.
+// Uses SharedPreferences, so call off the main thread.
+public class SnoozeScheduler {
+    static final String ACTION_SNOOZE = "com.alarmv1.action.SNOOZE";
+    
+    private static final String PREFS_NAME = "snooze";
+    private static final String KEY_SNOOZE_MINUTES = "snooze_minutes";
+    private static final String KEY_MAX_SNOOZES = "max_snoozes";
+    private static final String KEY_PENDING_PREFIX = "pending_"; // + alarm id -> Base64 payload
+    private static final String KEY_COUNT_PREFIX = "count_"; // + alarm id -> snoozes in this ring
+    
+    private static final int DEFAULT_SNOOZE_MINUTES = 10;
+    private static final int DEFAULT_MAX_SNOOZES = 3;
+    
+    public static int getSnoozeMinutes(Context context) {
+        return prefs(context).getInt(KEY_SNOOZE_MINUTES, DEFAULT_SNOOZE_MINUTES);
+    }
+    
+    public static void setSnoozeMinutes(Context context, int minutes) {
+        prefs(context).edit().putInt(KEY_SNOOZE_MINUTES, Math.max(1, minutes)).apply();
+    }
+    
+    public static int getMaxSnoozes(Context context) {
+        return prefs(context).getInt(KEY_MAX_SNOOZES, DEFAULT_MAX_SNOOZES);
+    }
+    
+    public static void setMaxSnoozes(Context context, int maxSnoozes) {
+        prefs(context).edit().putInt(KEY_MAX_SNOOZES, Math.max(0, maxSnoozes)).apply();
+    }
+    
+    // Arms a snooze for the ringing alarm; false once it has been snoozed the maximum number of times
+    public static boolean snooze(Context context, AlarmPayload payload) {
+        SharedPreferences prefs = prefs(context);
+        int alarmId = payload.getAlarmId();
+        int count = prefs.getInt(KEY_COUNT_PREFIX + alarmId, 0);
+        if (count >= getMaxSnoozes(context)) {
+            clear(context, alarmId);
+            return false;
+        }
+        
+        long triggerTime = System.currentTimeMillis() + getSnoozeMinutes(context) * 60 * 1000L;
+        AlarmPayload snoozed = payload.withFireTime(triggerTime);
+        prefs.edit()
+                .putInt(KEY_COUNT_PREFIX + alarmId, count + 1)
+                .putString(KEY_PENDING_PREFIX + alarmId, Base64.encodeToString(snoozed.toByteArray(), Base64.NO_WRAP))
+                .apply();
+        arm(context, snoozed);
+        return true;
+    }
+    
+    // The snooze has rung; the count is kept so the limit spans the whole snooze chain
+    static void onSnoozeFired(Context context, int alarmId) {
+        prefs(context).edit().remove(KEY_PENDING_PREFIX + alarmId).apply();
+    }
+    
+    // Dismissed: cancel any pending snooze and start counting from zero next time
+    public static void clear(Context context, int alarmId) {
+        prefs(context).edit()
+                .remove(KEY_PENDING_PREFIX + alarmId)
+                .remove(KEY_COUNT_PREFIX + alarmId)
+                .apply();
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(context, RequestCodes.forSnooze(alarmId),
+                new Intent(context, AlarmReceiver.class).setAction(ACTION_SNOOZE),
+                PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE);
+        if (alarmManager != null && pendingIntent != null) {
+            alarmManager.cancel(pendingIntent);
+            pendingIntent.cancel();
+        }
+    }
+    
+    // Forgets the snoozes of alarms renumbered by the database upgrade; their PendingIntents are
+    // cancelled with the rest of the legacy registrations
+    static void dropLegacy(Context context, List<Integer> oldIds) {
+        SharedPreferences.Editor editor = prefs(context).edit();
+        for (int oldId : oldIds) {
+            editor.remove(KEY_PENDING_PREFIX + oldId).remove(KEY_COUNT_PREFIX + oldId);
+        }
+        editor.apply();
+    }
+    
+    // Re-arms pending snoozes after a reboot; ones that came due while the device was off fire now
+    static int rescheduleAll(Context context) {
+        int armed = 0;
+        long now = System.currentTimeMillis();
+        SharedPreferences.Editor stale = null;
+        for (Map.Entry<String, ?> entry : prefs(context).getAll().entrySet()) {
+            if (!entry.getKey().startsWith(KEY_PENDING_PREFIX) || !(entry.getValue() instanceof String)) {
+                continue;
+            }
+            AlarmPayload payload = AlarmPayload.fromByteArray(Base64.decode((String) entry.getValue(), Base64.NO_WRAP));
+            if (payload != null && (payload.getAlarmId() < 1 || payload.getAlarmId() > RequestCodes.MAX_ALARM_ID)) {
+                // An id no request code can hold would overflow into another alarm's codes
+                if (stale == null) stale = prefs(context).edit();
+                stale.remove(entry.getKey()).remove(KEY_COUNT_PREFIX + payload.getAlarmId());
+            } else if (payload != null) {
+                arm(context, payload.getFireTime() > now ? payload : payload.withFireTime(now));
+                armed++;
+            }
+        }
+        if (stale != null) {
+            stale.apply();
+        }
+        return armed;
+    }
+    
+    private static void arm(Context context, AlarmPayload payload) {
+        AlarmManagerHelper.initialize(context);
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(ACTION_SNOOZE);
+        intent.putExtra(AlarmPayload.EXTRA_PAYLOAD, payload.toByteArray());
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(
+                context,
+                RequestCodes.forSnooze(payload.getAlarmId()),
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        AlarmManagerHelper.setExact(payload.getFireTime(), pendingIntent);
+    }
+    
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,12 @@
+package com.alarmv1;
+
+public interface TimeSource {
+    TimeSource SYSTEM = new TimeSource() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+    
+    long currentTimeMillis();
+}
@@ -0,0 +1,88 @@
+package com.alarmv1;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// What the list screen's diff decides for each kind of change. Its cost over 500 alarms is
+// timed by AlarmDiffBenchmark in the benchmark module.
+public class AlarmDiffCallbackTest {
+    private final AlarmDiffCallback callback = new AlarmDiffCallback();
+    
+    @Test
+    public void rowsMatchByIdOnly() {
+        Alarm alarm = alarm();
+        Alarm edited = new Alarm(alarm);
+        edited.setHour(9);
+        edited.setLabel("Renamed");
+        assertTrue(callback.areItemsTheSame(alarm, edited));
+        
+        Alarm other = new Alarm(alarm);
+        other.setId(alarm.getId() + 1);
+        assertFalse(callback.areItemsTheSame(alarm, other));
+    }
+    
+    @Test
+    public void reloadedCopyHasSameContents() {
+        Alarm alarm = alarm();
+        assertTrue(callback.areContentsTheSame(alarm, new Alarm(alarm)));
+    }
+    
+    @Test
+    public void toggleRebindsOnlyTheSwitch() {
+        Alarm alarm = alarm();
+        Alarm toggled = new Alarm(alarm);
+        toggled.setEnabled(!alarm.isEnabled());
+        
+        assertFalse(callback.areContentsTheSame(alarm, toggled));
+        assertEquals(AlarmDiffCallback.PAYLOAD_ENABLED, callback.getChangePayload(alarm, toggled));
+    }
+    
+    @Test
+    public void displayedEditsRebindTheWholeRow() {
+        Alarm alarm = alarm();
+        
+        Alarm retimed = new Alarm(alarm);
+        retimed.setMinute(45);
+        assertFalse(callback.areContentsTheSame(alarm, retimed));
+        assertNull(callback.getChangePayload(alarm, retimed));
+        
+        Alarm repeated = new Alarm(alarm);
+        repeated.setRepeatDays((byte) 0x41);
+        assertFalse(callback.areContentsTheSame(alarm, repeated));
+        assertNull(callback.getChangePayload(alarm, repeated));
+        
+        Alarm relabelled = new Alarm(alarm);
+        relabelled.setLabel(null);
+        assertFalse(callback.areContentsTheSame(alarm, relabelled));
+        assertNull(callback.getChangePayload(alarm, relabelled));
+    }
+    
+    @Test
+    public void toggleWithAnEditRebindsTheWholeRow() {
+        Alarm alarm = alarm();
+        Alarm changed = new Alarm(alarm);
+        changed.setEnabled(!alarm.isEnabled());
+        changed.setHour(alarm.getHour() + 1);
+        
+        assertFalse(callback.areContentsTheSame(alarm, changed));
+        assertNull(callback.getChangePayload(alarm, changed));
+    }
+    
+    @Test
+    public void fieldsOffTheRowDontRebindIt() {
+        // The row shows neither the tone nor the vibrate setting
+        Alarm alarm = alarm();
+        Alarm changed = new Alarm(alarm);
+        changed.setRingtoneIndex(alarm.getRingtoneIndex() + 1);
+        changed.setVibrate(!alarm.isVibrate());
+        assertTrue(callback.areContentsTheSame(alarm, changed));
+    }
+    
+    private static Alarm alarm() {
+        return new Alarm(7, 6, 30, "Work", true, (byte) 0x3E, true, 2);
+    }
+}
@@ -0,0 +1,281 @@
+package com.alarmv1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+// AlarmDatabase's per-operation cost before and after the persistent connection: the *Reopening
+// variants open the file, prepare the statement and close again on every call, as each method
+// did with getWritableDatabase() and db.close(); the others share one WAL connection and
+// statements prepared once. Desktop SQLite through JDBC stands in for the framework's, so the
+// scores cover the engine and file work, not the framework's JNI and CursorWindow layer.
+@State(Scope.Thread)
+public class AlarmDatabaseBenchmark {
+    private static final int ALARMS = 100;
+    private static final String TABLE = "alarms";
+    private static final String COLUMNS = AlarmRowMapper.COLUMN_HOUR + ", " + AlarmRowMapper.COLUMN_MINUTE + ", " +
+            AlarmRowMapper.COLUMN_LABEL + ", " + AlarmRowMapper.COLUMN_ENABLED + ", " +
+            AlarmRowMapper.COLUMN_REPEAT_MASK + ", " + AlarmRowMapper.COLUMN_VIBRATE + ", " +
+            AlarmRowMapper.COLUMN_RINGTONE_INDEX;
+    // The statements AlarmDatabase compiles
+    private static final String SQL_INSERT = "INSERT INTO " + TABLE + " (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_UPDATE = "UPDATE " + TABLE + " SET " +
+            AlarmRowMapper.COLUMN_HOUR + " = ?, " + AlarmRowMapper.COLUMN_MINUTE + " = ?, " +
+            AlarmRowMapper.COLUMN_LABEL + " = ?, " + AlarmRowMapper.COLUMN_ENABLED + " = ?, " +
+            AlarmRowMapper.COLUMN_REPEAT_MASK + " = ?, " + AlarmRowMapper.COLUMN_VIBRATE + " = ?, " +
+            AlarmRowMapper.COLUMN_RINGTONE_INDEX + " = ? WHERE " + AlarmRowMapper.COLUMN_ID + " = ?";
+    private static final String SQL_SET_ENABLED = "UPDATE " + TABLE + " SET " + AlarmRowMapper.COLUMN_ENABLED +
+            " = ? WHERE " + AlarmRowMapper.COLUMN_ID + " = ?";
+    private static final String SQL_DELETE = "DELETE FROM " + TABLE + " WHERE " + AlarmRowMapper.COLUMN_ID + " = ?";
+    private static final String SQL_GET_BY_ID = "SELECT " + AlarmRowMapper.COLUMN_ID + ", " + COLUMNS +
+            " FROM " + TABLE + " WHERE " + AlarmRowMapper.COLUMN_ID + " = ?";
+    
+    private File reopenedFile;
+    private File persistentFile;
+    private String reopenedUrl;
+    private Connection connection;
+    private PreparedStatement insertStatement;
+    private PreparedStatement updateStatement;
+    private PreparedStatement setEnabledStatement;
+    private PreparedStatement deleteStatement;
+    private PreparedStatement getByIdStatement;
+    
+    private Alarm alarm;
+    private int nextId; // Cycles through the seeded rows
+    private boolean enabled;
+    
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        reopenedFile = File.createTempFile("alarms_reopened", ".db");
+        persistentFile = File.createTempFile("alarms_persistent", ".db");
+        reopenedUrl = "jdbc:sqlite:" + reopenedFile.getPath();
+        
+        // The old helper: default rollback journal, full sync
+        Connection reopened = DriverManager.getConnection(reopenedUrl);
+        seed(reopened);
+        reopened.close();
+        
+        // As AlarmDatabase opens it: WAL, which Android pairs with synchronous=NORMAL
+        connection = DriverManager.getConnection("jdbc:sqlite:" + persistentFile.getPath());
+        Statement pragmas = connection.createStatement();
+        pragmas.execute("PRAGMA journal_mode=WAL");
+        pragmas.execute("PRAGMA synchronous=NORMAL");
+        pragmas.close();
+        seed(connection);
+        insertStatement = connection.prepareStatement(SQL_INSERT);
+        updateStatement = connection.prepareStatement(SQL_UPDATE);
+        setEnabledStatement = connection.prepareStatement(SQL_SET_ENABLED);
+        deleteStatement = connection.prepareStatement(SQL_DELETE);
+        getByIdStatement = connection.prepareStatement(SQL_GET_BY_ID);
+        
+        alarm = new Alarm(1, 7, 30, "Work", true, (byte) 0x3E, true, 2);
+    }
+    
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+        delete(reopenedFile);
+        delete(persistentFile);
+    }
+    
+    // Keeps the table at its seeded size across iterations
+    @TearDown(Level.Iteration)
+    public void trim() throws SQLException {
+        trim(connection);
+        Connection reopened = DriverManager.getConnection(reopenedUrl);
+        trim(reopened);
+        reopened.close();
+    }
+    
+    @Setup(Level.Invocation)
+    public void next() {
+        nextId = nextId % ALARMS + 1;
+        enabled = !enabled;
+    }
+    
+    @Benchmark
+    public int insertReopening() throws SQLException {
+        Connection reopened = DriverManager.getConnection(reopenedUrl);
+        try {
+            PreparedStatement statement = reopened.prepareStatement(SQL_INSERT);
+            bindAlarm(statement, alarm);
+            return statement.executeUpdate();
+        } finally {
+            reopened.close();
+        }
+    }
+    
+    @Benchmark
+    public int insert() throws SQLException {
+        bindAlarm(insertStatement, alarm);
+        return insertStatement.executeUpdate();
+    }
+    
+    @Benchmark
+    public int updateReopening() throws SQLException {
+        Connection reopened = DriverManager.getConnection(reopenedUrl);
+        try {
+            PreparedStatement statement = reopened.prepareStatement(SQL_UPDATE);
+            bindAlarm(statement, alarm);
+            statement.setInt(8, nextId);
+            return statement.executeUpdate();
+        } finally {
+            reopened.close();
+        }
+    }
+    
+    @Benchmark
+    public int update() throws SQLException {
+        bindAlarm(updateStatement, alarm);
+        updateStatement.setInt(8, nextId);
+        return updateStatement.executeUpdate();
+    }
+    
+    // Before the toggle statement existed the switch rewrote the whole row
+    @Benchmark
+    public int toggleReopening() throws SQLException {
+        alarm.setEnabled(enabled);
+        return updateReopening();
+    }
+    
+    @Benchmark
+    public int toggle() throws SQLException {
+        setEnabledStatement.setInt(1, enabled ? 1 : 0);
+        setEnabledStatement.setInt(2, nextId);
+        return setEnabledStatement.executeUpdate();
+    }
+    
+    @Benchmark
+    public int deleteReopening(DeleteTarget target) throws SQLException {
+        Connection reopened = DriverManager.getConnection(reopenedUrl);
+        try {
+            PreparedStatement statement = reopened.prepareStatement(SQL_DELETE);
+            statement.setLong(1, target.reopenedId);
+            return statement.executeUpdate();
+        } finally {
+            reopened.close();
+        }
+    }
+    
+    @Benchmark
+    public int delete(DeleteTarget target) throws SQLException {
+        deleteStatement.setLong(1, target.persistentId);
+        return deleteStatement.executeUpdate();
+    }
+    
+    @Benchmark
+    public Alarm getByIdReopening() throws SQLException {
+        Connection reopened = DriverManager.getConnection(reopenedUrl);
+        try {
+            return getById(reopened.prepareStatement(SQL_GET_BY_ID), nextId);
+        } finally {
+            reopened.close();
+        }
+    }
+    
+    @Benchmark
+    public Alarm getById() throws SQLException {
+        return getById(getByIdStatement, nextId);
+    }
+    
+    // A fresh row in each database for every delete to remove; inserting it is not timed
+    @State(Scope.Thread)
+    public static class DeleteTarget {
+        long reopenedId;
+        long persistentId;
+        
+        @Setup(Level.Invocation)
+        public void insertRow(AlarmDatabaseBenchmark benchmark) throws SQLException {
+            Connection reopened = DriverManager.getConnection(benchmark.reopenedUrl);
+            try {
+                reopenedId = insertReturningId(reopened, benchmark.alarm);
+            } finally {
+                reopened.close();
+            }
+            persistentId = insertReturningId(benchmark.connection, benchmark.alarm);
+        }
+    }
+    
+    private static void seed(Connection db) throws SQLException {
+        Statement statement = db.createStatement();
+        statement.execute("CREATE TABLE " + TABLE + " (" +
+                AlarmRowMapper.COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                AlarmRowMapper.COLUMN_HOUR + " INTEGER, " +
+                AlarmRowMapper.COLUMN_MINUTE + " INTEGER, " +
+                AlarmRowMapper.COLUMN_LABEL + " TEXT, " +
+                AlarmRowMapper.COLUMN_ENABLED + " INTEGER, " +
+                AlarmRowMapper.COLUMN_REPEAT_MASK + " INTEGER, " +
+                AlarmRowMapper.COLUMN_VIBRATE + " INTEGER, " +
+                AlarmRowMapper.COLUMN_RINGTONE_INDEX + " INTEGER)");
+        statement.close();
+        Random random = new Random(42);
+        PreparedStatement insert = db.prepareStatement(SQL_INSERT);
+        for (int i = 0; i < ALARMS; i++) {
+            bindAlarm(insert, new Alarm(0, random.nextInt(24), random.nextInt(60), "Alarm " + i,
+                    random.nextBoolean(), (byte) random.nextInt(0x80), true, random.nextInt(10)));
+            insert.executeUpdate();
+        }
+        insert.close();
+    }
+    
+    private static void trim(Connection db) throws SQLException {
+        Statement statement = db.createStatement();
+        statement.execute("DELETE FROM " + TABLE + " WHERE " + AlarmRowMapper.COLUMN_ID + " > " + ALARMS);
+        statement.close();
+    }
+    
+    private static long insertReturningId(Connection db, Alarm alarm) throws SQLException {
+        PreparedStatement statement = db.prepareStatement(SQL_INSERT, Statement.RETURN_GENERATED_KEYS);
+        try {
+            bindAlarm(statement, alarm);
+            statement.executeUpdate();
+            ResultSet keys = statement.getGeneratedKeys();
+            keys.next();
+            return keys.getLong(1);
+        } finally {
+            statement.close();
+        }
+    }
+    
+    private static void bindAlarm(PreparedStatement statement, Alarm alarm) throws SQLException {
+        statement.setInt(1, alarm.getHour());
+        statement.setInt(2, alarm.getMinute());
+        statement.setString(3, alarm.getLabel());
+        statement.setInt(4, alarm.isEnabled() ? 1 : 0);
+        statement.setInt(5, alarm.getRepeatDays());
+        statement.setInt(6, alarm.isVibrate() ? 1 : 0);
+        statement.setInt(7, alarm.getRingtoneIndex());
+    }
+    
+    private static Alarm getById(PreparedStatement statement, int id) throws SQLException {
+        statement.setInt(1, id);
+        ResultSet row = statement.executeQuery();
+        try {
+            if (!row.next()) return null;
+            return new Alarm(row.getInt(1), row.getInt(2), row.getInt(3), row.getString(4), row.getInt(5) == 1,
+                    (byte) row.getInt(6), row.getInt(7) == 1, row.getInt(8));
+        } finally {
+            row.close();
+        }
+    }
+    
+    private static void delete(File file) {
+        file.delete();
+        new File(file.getPath() + "-wal").delete();
+        new File(file.getPath() + "-shm").delete();
+        new File(file.getPath() + "-journal").delete();
+    }
+}
@@ -0,0 +1,64 @@
+package com.alarmv1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+
+@State(Scope.Thread)
+public class AlarmModelBenchmark {
+    private static final int ALARMS = 128; // Covers every repeat mask once
+    
+    private final Alarm[] alarms = new Alarm[ALARMS];
+    private final boolean[][] checkedDays = new boolean[ALARMS][7];
+    private int next;
+    
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < ALARMS; i++) {
+            alarms[i] = new Alarm(i + 1, random.nextInt(24), random.nextInt(60), "", true, (byte) i, true, 0);
+            for (int day = 0; day < 7; day++) {
+                checkedDays[i][day] = (i & (1 << day)) != 0;
+            }
+        }
+    }
+    
+    @Benchmark
+    public String getRepeatText() {
+        return alarms[next++ & (ALARMS - 1)].getRepeatText();
+    }
+    
+    @Benchmark
+    public String getTimeString() {
+        return alarms[next++ & (ALARMS - 1)].getTimeString();
+    }
+    
+    // The add/edit dialog's chips to the stored bitmask
+    @Benchmark
+    public byte encodeRepeatDays() {
+        int index = next++ & (ALARMS - 1);
+        boolean[] days = checkedDays[index];
+        byte repeatDays = 0;
+        for (int i = 0; i < 7; i++) {
+            if (days[i]) {
+                repeatDays |= 1 << i;
+            }
+        }
+        Alarm alarm = alarms[index];
+        alarm.setRepeatDays(repeatDays);
+        return alarm.getRepeatDays();
+    }
+    
+    // The stored bitmask back to the dialog's chips
+    @Benchmark
+    public void decodeRepeatDays(Blackhole blackhole) {
+        Alarm alarm = alarms[next++ & (ALARMS - 1)];
+        for (int i = 0; i < 7; i++) {
+            blackhole.consume(alarm.isRepeatDay(i));
+        }
+    }
+}
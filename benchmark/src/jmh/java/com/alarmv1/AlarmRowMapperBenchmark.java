@@ -0,0 +1,151 @@
+package com.alarmv1;
+
+import android.database.Cursor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Mapping a 10k-row alarm table to Alarms. The rows sit in memory behind a Cursor that looks
+// columns up the way AbstractCursor does (a case-insensitive scan of the names) and builds a new
+// String per getString, like CursorWindow, so the scores cover the Java side of a query only;
+// SQLite's own savings from reading fewer columns come on top.
+@State(Scope.Thread)
+public class AlarmRowMapperBenchmark {
+    private static final int ROWS = 10000;
+    // What planning registrations reads: no label, vibrate or tone
+    private static final String[] PROJECTION_SCHEDULE = {AlarmRowMapper.COLUMN_ID, AlarmRowMapper.COLUMN_HOUR,
+            AlarmRowMapper.COLUMN_MINUTE, AlarmRowMapper.COLUMN_ENABLED, AlarmRowMapper.COLUMN_REPEAT_MASK};
+    // Column order of the table itself, which SELECT * returned
+    private static final String[] TABLE_COLUMNS = {AlarmRowMapper.COLUMN_ID, AlarmRowMapper.COLUMN_HOUR,
+            AlarmRowMapper.COLUMN_MINUTE, AlarmRowMapper.COLUMN_LABEL, AlarmRowMapper.COLUMN_ENABLED,
+            AlarmRowMapper.COLUMN_REPEAT_MASK, AlarmRowMapper.COLUMN_VIBRATE, AlarmRowMapper.COLUMN_RINGTONE_INDEX};
+    
+    private TableCursor allColumns;
+    private TableCursor scheduleColumns;
+    
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        Object[][] rows = new Object[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = new Object[]{i + 1, random.nextInt(24), random.nextInt(60), "Alarm " + i,
+                    random.nextInt(2), random.nextInt(0x80), 1, random.nextInt(10)};
+        }
+        allColumns = new TableCursor(TABLE_COLUMNS, rows, TABLE_COLUMNS);
+        scheduleColumns = new TableCursor(TABLE_COLUMNS, rows, PROJECTION_SCHEDULE);
+    }
+    
+    // The previous cursorToAlarm over SELECT *: eight name lookups and a try block per row
+    @Benchmark
+    public List<Alarm> perRowLookups() {
+        allColumns.reset();
+        List<Alarm> alarms = new ArrayList<>();
+        while (allColumns.moveToNext()) {
+            Alarm alarm = new Alarm();
+            alarm.setId(allColumns.getInt(allColumns.getColumnIndexOrThrow(AlarmRowMapper.COLUMN_ID)));
+            alarm.setHour(allColumns.getInt(allColumns.getColumnIndexOrThrow(AlarmRowMapper.COLUMN_HOUR)));
+            alarm.setMinute(allColumns.getInt(allColumns.getColumnIndexOrThrow(AlarmRowMapper.COLUMN_MINUTE)));
+            alarm.setLabel(allColumns.getString(allColumns.getColumnIndexOrThrow(AlarmRowMapper.COLUMN_LABEL)));
+            alarm.setEnabled(allColumns.getInt(allColumns.getColumnIndexOrThrow(AlarmRowMapper.COLUMN_ENABLED)) == 1);
+            alarm.setRepeatDays((byte) allColumns.getInt(allColumns.getColumnIndexOrThrow(AlarmRowMapper.COLUMN_REPEAT_MASK)));
+            alarm.setVibrate(allColumns.getInt(allColumns.getColumnIndexOrThrow(AlarmRowMapper.COLUMN_VIBRATE)) == 1);
+            try {
+                alarm.setRingtoneIndex(allColumns.getInt(allColumns.getColumnIndexOrThrow(AlarmRowMapper.COLUMN_RINGTONE_INDEX)));
+            } catch (IllegalArgumentException e) {
+                alarm.setRingtoneIndex(0);
+            }
+            alarms.add(alarm);
+        }
+        return alarms;
+    }
+    
+    // getAllAlarms: the full projection, indices resolved once
+    @Benchmark
+    public List<Alarm> rowMapper() {
+        allColumns.reset();
+        return new AlarmRowMapper(allColumns).mapAll();
+    }
+    
+    // The same mapper over the scheduling columns only
+    @Benchmark
+    public List<Alarm> rowMapperScheduleProjection() {
+        scheduleColumns.reset();
+        return new AlarmRowMapper(scheduleColumns).mapAll();
+    }
+    
+    private static final class TableCursor implements Cursor {
+        private final String[] columnNames;
+        private final int[] sourceColumns; // Table column behind each projected one
+        private final Object[][] rows;
+        private int position = -1;
+        
+        TableCursor(String[] tableColumns, Object[][] rows, String[] projection) {
+            this.columnNames = projection;
+            this.rows = rows;
+            sourceColumns = new int[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                for (int j = 0; j < tableColumns.length; j++) {
+                    if (tableColumns[j].equals(projection[i])) sourceColumns[i] = j;
+                }
+            }
+        }
+        
+        void reset() {
+            position = -1;
+        }
+        
+        @Override
+        public int getCount() {
+            return rows.length;
+        }
+        
+        @Override
+        public boolean moveToFirst() {
+            position = 0;
+            return rows.length > 0;
+        }
+        
+        @Override
+        public boolean moveToNext() {
+            return ++position < rows.length;
+        }
+        
+        @Override
+        public int getColumnIndex(String columnName) {
+            for (int i = 0; i < columnNames.length; i++) {
+                if (columnNames[i].equalsIgnoreCase(columnName)) return i;
+            }
+            return -1;
+        }
+        
+        @Override
+        public int getColumnIndexOrThrow(String columnName) {
+            int index = getColumnIndex(columnName);
+            if (index < 0) {
+                throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+            }
+            return index;
+        }
+        
+        @Override
+        public int getInt(int columnIndex) {
+            return (Integer) rows[position][sourceColumns[columnIndex]];
+        }
+        
+        @Override
+        public String getString(int columnIndex) {
+            Object value = rows[position][sourceColumns[columnIndex]];
+            return value != null ? new String(value.toString().toCharArray()) : null;
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.alarmv1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Random;
+import java.util.TimeZone;
+
+@State(Scope.Thread)
+public class NextAlarmTimeBenchmark {
+    private static final int ALARMS = 64; // Power of two so the index wraps with a mask
+    private static final ZoneId ZONE = ZoneId.of("America/New_York");
+    
+    private final Alarm[] alarms = new Alarm[ALARMS];
+    private NextAlarmCalculator calculator;
+    private long beforeSpringForward;
+    private int next;
+    
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < ALARMS; i++) {
+            // Every fourth alarm is a one-shot
+            byte repeatDays = (byte) (i % 4 == 0 ? 0 : 1 + random.nextInt(0x7F));
+            alarms[i] = new Alarm(i + 1, random.nextInt(24), random.nextInt(60), "", true, repeatDays, true, 0);
+        }
+        calculator = new NextAlarmCalculator(TimeSource.SYSTEM, TimeZone.getTimeZone(ZONE));
+        beforeSpringForward = LocalDateTime.of(2026, 3, 7, 23, 0).atZone(ZONE).toInstant().toEpochMilli();
+    }
+    
+    // What the list and the scheduler call: the default calculator against the system clock
+    @Benchmark
+    public long getNextAlarmTime() {
+        return alarms[next++ & (ALARMS - 1)].getNextAlarmTime();
+    }
+    
+    // Lookups whose next occurrence falls on or after a DST transition day
+    @Benchmark
+    public long nextAlarmTimeAcrossDst() {
+        Alarm alarm = alarms[next++ & (ALARMS - 1)];
+        return calculator.nextAlarmTime(alarm.getHour(), alarm.getMinute(), alarm.getRepeatDays(), beforeSpringForward);
+    }
+    
+    // First lookup after a time zone change, which rebuilds the offset table
+    @Benchmark
+    public long nextAlarmTimeAfterZoneChange() {
+        calculator.setTimeZone(TimeZone.getTimeZone(ZONE));
+        Alarm alarm = alarms[next++ & (ALARMS - 1)];
+        return calculator.nextAlarmTime(alarm.getHour(), alarm.getMinute(), alarm.getRepeatDays(), beforeSpringForward);
+    }
+}
@@ -0,0 +1,76 @@
+package com.alarmv1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Cold-start loads of the alarm list from the mapped snapshot instead of SQLite. The file is
+// written once in setup and then served from the page cache, as on a warm start. Every read maps
+// the file and a mapping is released only when its buffer is collected; scanEnabled allocates so
+// little that without a small young generation the mappings outrun vm.max_map_count.
+@Fork(jvmArgsAppend = "-Xmn16m")
+@State(Scope.Thread)
+public class StartupSnapshotBenchmark {
+    private static final int SCHEMA_VERSION = 6;
+    private static final long GENERATION = 42;
+    
+    @Param({"10", "100"})
+    public int alarmCount;
+    
+    private File file;
+    private AlarmListSnapshot snapshot;
+    private List<Alarm> alarms;
+    
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        alarms = new ArrayList<>(alarmCount);
+        for (int i = 0; i < alarmCount; i++) {
+            alarms.add(new Alarm(i + 1, random.nextInt(24), random.nextInt(60), "Alarm " + i,
+                    random.nextBoolean(), (byte) random.nextInt(0x80), true, random.nextInt(10)));
+        }
+        file = File.createTempFile("alarm_list", ".snapshot");
+        snapshot = new AlarmListSnapshot(file);
+        snapshot.write(alarms, SCHEMA_VERSION, GENERATION);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+    
+    // MainActivity's first paint: map, verify and build the list
+    @Benchmark
+    public List<Alarm> readSnapshot() {
+        return snapshot.read(SCHEMA_VERSION).toList();
+    }
+    
+    // What scheduling needs from each record, read in place without building Alarms
+    @Benchmark
+    public int scanEnabled() {
+        AlarmListSnapshot.Contents contents = snapshot.read(SCHEMA_VERSION);
+        int sum = 0;
+        for (int i = 0; i < contents.size(); i++) {
+            if (contents.isEnabled(i)) {
+                sum += contents.getHour(i) * 60 + contents.getMinute(i) + contents.getRepeatDays(i);
+            }
+        }
+        return sum;
+    }
+    
+    // Paid on the writer thread after every change
+    @Benchmark
+    public void writeSnapshot() throws IOException {
+        snapshot.write(alarms, SCHEMA_VERSION, GENERATION);
+    }
+}
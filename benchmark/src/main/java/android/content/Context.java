@@ -0,0 +1,5 @@
+package android.content;
+
+// Compile-time stand-in so the app's Android-free model classes build on a plain JVM
+public abstract class Context {
+}
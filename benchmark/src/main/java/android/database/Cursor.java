@@ -0,0 +1,23 @@
+package android.database;
+
+import java.io.Closeable;
+
+// Compile-time stand-in with the members AlarmRowMapper uses; the benchmark supplies the rows
+public interface Cursor extends Closeable {
+    int getCount();
+    
+    boolean moveToFirst();
+    
+    boolean moveToNext();
+    
+    int getColumnIndex(String columnName);
+    
+    int getColumnIndexOrThrow(String columnName);
+    
+    int getInt(int columnIndex);
+    
+    String getString(int columnIndex);
+    
+    @Override
+    void close();
+}
@@ -0,0 +1,10 @@
+package android.text.format;
+
+import android.content.Context;
+
+// Compile-time stand-in; benchmarks always take the 24-hour path
+public class DateFormat {
+    public static boolean is24HourFormat(Context context) {
+        return true;
+    }
+}
@@ -0,0 +1,16 @@
+package androidx.recyclerview.widget;
+
+import androidx.annotation.NonNull;
+
+// Compile-time stand-in with the ItemCallback AlarmDiffCallback extends; the benchmark drives it
+public class DiffUtil {
+    public abstract static class ItemCallback<T> {
+        public abstract boolean areItemsTheSame(@NonNull T oldItem, @NonNull T newItem);
+        
+        public abstract boolean areContentsTheSame(@NonNull T oldItem, @NonNull T newItem);
+        
+        public Object getChangePayload(@NonNull T oldItem, @NonNull T newItem) {
+            return null;
+        }
+    }
+}
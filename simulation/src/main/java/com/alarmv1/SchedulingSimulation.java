@@ -0,0 +1,278 @@
+package com.alarmv1;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TimeZone;
+
+// Replays a long stretch of alarm firings against a virtual clock and checks them against an
+// independent java.time model of when each alarm should ring. Arming mirrors AlarmManagerHelper:
+// plan with AlarmSchedule, cancel recorded codes that are no longer planned, set the rest; a fired
+// repeating alarm is re-planned from its fire time and a fired one-shot is disabled. Reboots wipe
+// the fake AlarmManager, and the device re-arms everything once it is back up.
+//
+// Usage: SchedulingSimulation [alarms] [days] [seed] [zone]
+public class SchedulingSimulation {
+    private static final long MINUTE_MILLIS = 60 * 1000L;
+    private static final long DAY_MILLIS = 24 * 60 * MINUTE_MILLIS;
+    private static final long LATE_WINDOW_MILLIS = DAY_MILLIS;
+    
+    private static final int REBOOT_EVERY_DAYS = 30;
+    private static final long REBOOT_DOWNTIME_MILLIS = 5 * MINUTE_MILLIS;
+    
+    private final SimClock clock;
+    private final SimAlarmManager alarmManager = new SimAlarmManager();
+    private final AlarmSchedule schedule;
+    
+    private final int[] hours;
+    private final int[] minutes;
+    private final int[] repeatMasks;
+    private final boolean[] enabled;
+    private final int[][] registrations; // Recorded codes per alarm, like the registrations table
+    private final LongList[] firings;
+    
+    private final int[] plannedCodes = new int[AlarmSchedule.MAX_REGISTRATIONS];
+    private final long[] plannedTimes = new long[AlarmSchedule.MAX_REGISTRATIONS];
+    
+    private long planCalls;
+    private long armNanos;
+    
+    private SchedulingSimulation(int alarmCount, long start, TimeZone zone, Random random) {
+        clock = new SimClock(start);
+        schedule = new AlarmSchedule(new NextAlarmCalculator(clock, zone));
+        hours = new int[alarmCount];
+        minutes = new int[alarmCount];
+        repeatMasks = new int[alarmCount];
+        enabled = new boolean[alarmCount];
+        registrations = new int[alarmCount][];
+        firings = new LongList[alarmCount];
+        for (int i = 0; i < alarmCount; i++) {
+            hours[i] = random.nextInt(24);
+            minutes[i] = random.nextInt(60);
+            // A quarter one-shots, the rest a random set of days
+            repeatMasks[i] = random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(0x7F);
+            enabled[i] = true;
+            registrations[i] = new int[0];
+            firings[i] = new LongList();
+        }
+    }
+    
+    public static void main(String[] args) {
+        int alarmCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : 365;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+        ZoneId zoneId = ZoneId.of(args.length > 3 ? args[3] : "America/New_York");
+        
+        Random random = new Random(seed);
+        long start = LocalDate.of(2026, 1, 1).atStartOfDay(zoneId).toInstant().toEpochMilli();
+        long end = start + days * DAY_MILLIS;
+        long[] reboots = rebootTimes(start, days, random);
+        
+        SchedulingSimulation simulation = new SchedulingSimulation(alarmCount, start, TimeZone.getTimeZone(zoneId), random);
+        long runStarted = System.nanoTime();
+        simulation.run(end, reboots);
+        long runNanos = System.nanoTime() - runStarted;
+        
+        System.out.printf("Simulated %d alarms over %d days in %s (seed %d), %d reboots, %d ms%n",
+                alarmCount, days, zoneId, seed, reboots.length, runNanos / 1_000_000);
+        simulation.report(start, end, zoneId, reboots);
+    }
+    
+    // About one reboot a month at a random time of day
+    private static long[] rebootTimes(long start, int days, Random random) {
+        LongList reboots = new LongList();
+        for (int day = 0; day < days; day++) {
+            if (random.nextInt(REBOOT_EVERY_DAYS) == 0) {
+                reboots.add(start + day * DAY_MILLIS + (long) (random.nextDouble() * DAY_MILLIS));
+            }
+        }
+        return reboots.toArray();
+    }
+    
+    private void run(long end, long[] reboots) {
+        for (int i = 0; i < hours.length; i++) {
+            arm(i);
+        }
+        int nextReboot = 0;
+        while (true) {
+            long until = nextReboot < reboots.length ? Math.min(reboots[nextReboot], end) : end;
+            SimAlarmManager.Registration due = alarmManager.pollDue(until);
+            if (due != null) {
+                clock.advanceTo(due.triggerTime);
+                onAlarmFired(due.alarmId - 1, due.triggerTime);
+                continue;
+            }
+            if (until == end) {
+                break;
+            }
+            // Anything due while the device is down is lost with the wiped registrations
+            alarmManager.reboot();
+            clock.advanceTo(reboots[nextReboot++] + REBOOT_DOWNTIME_MILLIS);
+            for (int i = 0; i < hours.length; i++) {
+                if (enabled[i]) {
+                    arm(i);
+                }
+            }
+        }
+    }
+    
+    private void onAlarmFired(int index, long fireTime) {
+        firings[index].add(fireTime);
+        if (repeatMasks[index] != 0) {
+            arm(index);
+        } else {
+            enabled[index] = false;
+            long started = System.nanoTime();
+            for (int code : registrations[index]) {
+                alarmManager.cancel(code);
+            }
+            registrations[index] = new int[0];
+            armNanos += System.nanoTime() - started;
+        }
+    }
+    
+    private void arm(int index) {
+        long started = System.nanoTime();
+        int alarmId = index + 1; // Ids start at 1, as with the AUTOINCREMENT sequence
+        int count = schedule.plan(alarmId, hours[index], minutes[index], repeatMasks[index],
+                clock.currentTimeMillis(), plannedCodes, plannedTimes);
+        planCalls++;
+        for (int code : registrations[index]) {
+            if (indexOf(plannedCodes, count, code) < 0) {
+                alarmManager.cancel(code);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            alarmManager.setExact(plannedCodes[i], alarmId, plannedTimes[i]);
+        }
+        registrations[index] = Arrays.copyOf(plannedCodes, count);
+        armNanos += System.nanoTime() - started;
+    }
+    
+    private static int indexOf(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) return i;
+        }
+        return -1;
+    }
+    
+    private void report(long start, long end, ZoneId zoneId, long[] reboots) {
+        long expectedTotal = 0;
+        long onTime = 0;
+        long duplicates = 0;
+        long late = 0;
+        long maxLateness = 0;
+        long unexpected = 0;
+        long missedDeviceOff = 0;
+        long missedDeviceOn = 0;
+        long firedTotal = 0;
+        
+        for (int i = 0; i < hours.length; i++) {
+            long[] expected = expectedOccurrences(i, start, end, zoneId);
+            boolean[] matched = new boolean[expected.length];
+            expectedTotal += expected.length;
+            long[] fired = firings[i].toArray();
+            firedTotal += fired.length;
+            for (long time : fired) {
+                int exact = Arrays.binarySearch(expected, time);
+                if (exact >= 0) {
+                    if (matched[exact]) {
+                        duplicates++;
+                    } else {
+                        matched[exact] = true;
+                        onTime++;
+                    }
+                    continue;
+                }
+                // Latest expected occurrence before the firing, if it is still unclaimed and recent
+                int before = -exact - 2;
+                if (before >= 0 && !matched[before] && time - expected[before] < LATE_WINDOW_MILLIS) {
+                    matched[before] = true;
+                    late++;
+                    maxLateness = Math.max(maxLateness, time - expected[before]);
+                } else {
+                    // Includes a one-shot that was due while the device was off: the boot re-arm
+                    // schedules it for its next occurrence instead of dropping it
+                    unexpected++;
+                }
+            }
+            for (int j = 0; j < expected.length; j++) {
+                if (matched[j]) continue;
+                if (isDuringDowntime(expected[j], reboots)) {
+                    missedDeviceOff++;
+                } else {
+                    missedDeviceOn++;
+                }
+            }
+        }
+        
+        System.out.printf("Expected firings:        %d%n", expectedTotal);
+        System.out.printf("Delivered firings:       %d%n", firedTotal);
+        System.out.printf("  on time:               %d%n", onTime);
+        System.out.printf("  duplicate:             %d%n", duplicates);
+        System.out.printf("  late:                  %d (max %d ms)%n", late, maxLateness);
+        System.out.printf("  unexpected:            %d%n", unexpected);
+        System.out.printf("Missed, device off:      %d%n", missedDeviceOff);
+        System.out.printf("Missed, device on:       %d%n", missedDeviceOn);
+        System.out.printf("Scheduling cost:         %d plans, %d setExact, %d cancel, %.1f us per plan%n",
+                planCalls, alarmManager.setCalls, alarmManager.cancelCalls,
+                planCalls == 0 ? 0.0 : armNanos / 1000.0 / planCalls);
+        System.out.printf("Registrations at end:    %d%n", alarmManager.size());
+    }
+    
+    // Independent of NextAlarmCalculator: java.time resolves wall times in a DST gap by shifting
+    // forward by the gap and in an overlap to the earlier offset, which is the behaviour promised
+    private long[] expectedOccurrences(int index, long start, long end, ZoneId zoneId) {
+        LocalTime time = LocalTime.of(hours[index], minutes[index]);
+        LocalDate date = Instant.ofEpochMilli(start).atZone(zoneId).toLocalDate();
+        LongList occurrences = new LongList();
+        for (; ; date = date.plusDays(1)) {
+            long occurrence = ZonedDateTime.ofLocal(LocalDateTime.of(date, time), zoneId, null)
+                    .toInstant().toEpochMilli();
+            if (occurrence >= end) {
+                break;
+            }
+            if (occurrence <= start || !occursOn(repeatMasks[index], date.getDayOfWeek())) {
+                continue;
+            }
+            occurrences.add(occurrence);
+            if (repeatMasks[index] == 0) {
+                break;
+            }
+        }
+        return occurrences.toArray();
+    }
+    
+    private static boolean occursOn(int repeatMask, DayOfWeek dayOfWeek) {
+        return repeatMask == 0 || (repeatMask & (1 << (dayOfWeek.getValue() % 7))) != 0;
+    }
+    
+    private static boolean isDuringDowntime(long time, long[] reboots) {
+        for (long reboot : reboots) {
+            if (time >= reboot && time < reboot + REBOOT_DOWNTIME_MILLIS) return true;
+        }
+        return false;
+    }
+    
+    private static final class LongList {
+        private long[] values = new long[16];
+        private int size;
+        
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+        
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.alarmv1;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Stand-in for AlarmManager with the semantics the app relies on: one registration per request
+// code (setting a code again replaces it), exact delivery, and everything lost on reboot
+class SimAlarmManager {
+    static class Registration implements Comparable<Registration> {
+        final int requestCode;
+        final int alarmId;
+        final long triggerTime;
+        
+        Registration(int requestCode, int alarmId, long triggerTime) {
+            this.requestCode = requestCode;
+            this.alarmId = alarmId;
+            this.triggerTime = triggerTime;
+        }
+        
+        @Override
+        public int compareTo(Registration other) {
+            int byTime = Long.compare(triggerTime, other.triggerTime);
+            return byTime != 0 ? byTime : Integer.compare(requestCode, other.requestCode);
+        }
+    }
+    
+    // Replaced or cancelled registrations stay in the queue and are skipped when polled
+    private final Map<Integer, Registration> active = new HashMap<>();
+    private final PriorityQueue<Registration> queue = new PriorityQueue<>();
+    
+    long setCalls;
+    long cancelCalls;
+    
+    void setExact(int requestCode, int alarmId, long triggerTime) {
+        setCalls++;
+        Registration current = active.get(requestCode);
+        if (current != null && current.triggerTime == triggerTime) {
+            return;
+        }
+        Registration registration = new Registration(requestCode, alarmId, triggerTime);
+        active.put(requestCode, registration);
+        queue.add(registration);
+    }
+    
+    void cancel(int requestCode) {
+        cancelCalls++;
+        active.remove(requestCode);
+    }
+    
+    // Next live registration due at or before until, removed as delivered; null if none
+    Registration pollDue(long until) {
+        while (!queue.isEmpty() && queue.peek().triggerTime <= until) {
+            Registration registration = queue.poll();
+            if (active.get(registration.requestCode) == registration) {
+                active.remove(registration.requestCode);
+                return registration;
+            }
+        }
+        return null;
+    }
+    
+    void reboot() {
+        active.clear();
+        queue.clear();
+    }
+    
+    int size() {
+        return active.size();
+    }
+}
@@ -0,0 +1,21 @@
+package com.alarmv1;
+
+// Virtual wall clock; only moves when the simulation advances it
+class SimClock implements TimeSource {
+    private long now;
+    
+    SimClock(long start) {
+        this.now = start;
+    }
+    
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+    
+    void advanceTo(long time) {
+        if (time > now) {
+            now = time;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.alarmv1;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// Plans 10k alarms with random ids, times and repeat days and checks that no two registrations
+// (snoozes included) share a request code, that every code is positive so 0 stays free for the
+// next-alarm mode, and that each code maps back to its alarm
+public class RequestCodesTest {
+    private static final int ALARMS = 10000;
+    private static final long[] SEEDS = {1, 42, 2024, 0x5EEDL};
+    
+    @Test
+    public void randomAlarmsNeverShareACode() {
+        for (long seed : SEEDS) {
+            Random random = new Random(seed);
+            Set<Integer> ids = new HashSet<>();
+            // The ends of the id range, where a shift overflows first
+            ids.add(1);
+            ids.add(RequestCodes.MAX_ALARM_ID);
+            while (ids.size() < ALARMS) {
+                ids.add(1 + random.nextInt(RequestCodes.MAX_ALARM_ID));
+            }
+            checkUnique(ids, random);
+        }
+    }
+    
+    @Test
+    public void denseIdsNeverShareACode() {
+        // What the AUTOINCREMENT sequence actually hands out
+        Set<Integer> ids = new HashSet<>();
+        for (int id = 1; id <= ALARMS; id++) {
+            ids.add(id);
+        }
+        checkUnique(ids, new Random(7));
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void rejectsIdsPastTheRange() {
+        RequestCodes.checkAlarmId(RequestCodes.MAX_ALARM_ID + 1L);
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void rejectsIdZero() {
+        RequestCodes.checkAlarmId(0);
+    }
+    
+    private static void checkUnique(Set<Integer> ids, Random random) {
+        AlarmSchedule schedule = new AlarmSchedule(new NextAlarmCalculator(TimeSource.SYSTEM,
+                TimeZone.getTimeZone("UTC")));
+        int[] codes = new int[AlarmSchedule.MAX_REGISTRATIONS];
+        long[] times = new long[AlarmSchedule.MAX_REGISTRATIONS];
+        long now = 1_700_000_000_000L;
+        Map<Integer, Integer> owners = new HashMap<>();
+        for (int id : ids) {
+            // Every mask from one-shot to all seven days
+            int count = schedule.plan(id, random.nextInt(24), random.nextInt(60), random.nextInt(0x80), now,
+                    codes, times);
+            for (int i = 0; i < count; i++) {
+                claim(owners, codes[i], id);
+            }
+            claim(owners, RequestCodes.forSnooze(id), id);
+        }
+    }
+    
+    private static void claim(Map<Integer, Integer> owners, int code, int alarmId) {
+        assertTrue("Code " + code + " of alarm " + alarmId + " is not positive", code > 0);
+        assertEquals(alarmId, RequestCodes.alarmIdOf(code));
+        assertNull("Code " + code + " is shared", owners.put(code, alarmId));
+    }
+}